@@ -6,28 +6,41 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.threadly.concurrent.future.FutureUtils;
+import org.threadly.concurrent.future.ListenableFuture;
 
 import com.lfp.connect.undertow.Undertows;
 import com.lfp.connect.undertow.handler.ErrorLoggingHandler;
 import com.lfp.connect.undertow.handler.ThreadHttpHandler;
 import com.lfp.joe.core.config.MachineConfig;
 import com.lfp.joe.core.process.executor.CoreTasks;
+import com.lfp.joe.core.properties.Configs;
 import com.lfp.joe.net.http.ip.IPs;
 import com.lfp.joe.net.socket.socks.Sockets;
-import com.lfp.joe.process.ProcessLFP;
 import com.lfp.joe.threads.Threads;
 import com.lfp.joe.utils.Utils;
+import com.lfp.joe.utils.function.Requires;
+import com.lfp.pgbouncer.service.config.PGBouncerServiceConfig;
 import com.lfp.pgbouncer_app.authenticator.AuthenticatorHandler;
 import com.lfp.pgbouncer_app.caddy.CaddyService;
 import com.lfp.pgbouncer_app.cert.CertStoreService;
 import com.lfp.pgbouncer_app.cert.PGBouncerServiceImpl;
+import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.config.PGBouncerExecConfig;
+import com.lfp.pgbouncer_app.metrics.MetricsHandler;
+import com.lfp.pgbouncer_app.metrics.MetricsService;
 import com.lfp.pgbouncer_app.pgbouncer.PGBouncerExecService;
+import com.lfp.pgbouncer_app.pgbouncer.PGBouncerPoolController;
+import com.lfp.pgbouncer_app.pgbouncer.PGBouncerStatsCollector;
+import com.lfp.pgbouncer_app.process.ProcessLogSink;
+import com.lfp.pgbouncer_app.process.ProcessSupervisor;
 import com.lfp.pgbouncer_app.storage.RedisService;
 
+import io.undertow.Handlers;
 import io.undertow.Undertow.ListenerInfo;
 import io.undertow.server.HttpHandler;
 
 public class App {
+	private static final String METRICS_PATH = "/metrics";
 	private static final Class<?> THIS_CLASS = new Object() {}.getClass().getEnclosingClass();
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
 
@@ -63,38 +76,83 @@ public class App {
 			var serviceHandler = initializeHandler(service);
 			serverBuilder.addHttpListener(serviceAddress.getPort(), serviceAddress.getHostString(), serviceHandler);
 		}
+		var appConfig = Configs.get(PGBouncerAppConfig.class);
+		if (appConfig.metricsEnabled()) {
+			var metricsHandler = initializeHandler(
+					Handlers.path().addExactPath(METRICS_PATH, new MetricsHandler(MetricsService.get())));
+			// same interface as the service listener, never every interface of the host
+			serverBuilder.addHttpListener(appConfig.metricsPort(), serviceAddress.getHostString(), metricsHandler);
+			registerMetrics(certStoreService);
+		}
 		var server = serverBuilder.build();
 		server.start();
 		logger.info("undertow started:{}",
 				Utils.Lots.stream(server.getListenerInfo()).map(ListenerInfo::getAddress).toList());
 		InetSocketAddress pgBouncerServiceAddress;
-		ProcessLFP pgBouncerServiceProcess;
+		List<ProcessSupervisor> supervisors = new ArrayList<>();
+		List<ProcessLogSink> logSinks = new ArrayList<>();
+		ListenableFuture<?> pgBouncerServiceTermination;
 		if (MachineConfig.isDeveloper() && Utils.Machine.isWindows()) {
-			pgBouncerServiceProcess = null;
+			pgBouncerServiceTermination = null;
 			pgBouncerServiceAddress = null;
 		} else {
 			var pgBouncerService = new PGBouncerExecService(authenticatorAddress, args);
 			pgBouncerServiceAddress = pgBouncerService.getPgBouncerAddress();
-			pgBouncerServiceProcess = pgBouncerService.start();
+			var pgBouncerServiceProcesses = pgBouncerService.start();
+			pgBouncerServiceTermination = pgBouncerService.getTerminationFuture();
+			supervisors.addAll(pgBouncerService.getSupervisors());
+			logSinks.add(pgBouncerService.getLogSink());
 			Runnable clientTLSUpdateTask = () -> {
-				var certStore = certStoreService.streamCertStores().findFirst().orElse(null);
+				var host = Configs.get(PGBouncerServiceConfig.class).uri().getHost();
+				var certStore = certStoreService.lookup(host).orElse(null);
 				Utils.Functions.unchecked(() -> pgBouncerService.setClientTLS(certStore));
 			};
 			certStoreService.addModificationEventListener(evt -> {
 				clientTLSUpdateTask.run();
 			});
 			clientTLSUpdateTask.run();
-			logger.info("pgBouncer started. pid{} address:{}", pgBouncerServiceProcess.getProcess().pid(),
+			if (appConfig.metricsEnabled() && !pgBouncerService.getAdminClients().isEmpty()) {
+				var statsCollector = new PGBouncerStatsCollector(pgBouncerService::getAdminClients,
+						appConfig.metricsSampleInterval());
+				MetricsService.get().register(statsCollector);
+				pgBouncerService.onScrap(statsCollector::scrap);
+			}
+			if (Configs.get(PGBouncerExecConfig.class).poolControllerEnabled()
+					&& !pgBouncerService.getAdminClients().isEmpty()) {
+				var poolController = new PGBouncerPoolController(pgBouncerService);
+				pgBouncerService.onScrap(poolController::scrap);
+			}
+			logger.info("pgBouncer started. pids:{} address:{}",
+					Utils.Lots.stream(pgBouncerServiceProcesses).map(v -> v.getProcess().pid()).toList(),
 					pgBouncerServiceAddress);
 		}
 		var caddyService = new CaddyService(serviceAddress, pgBouncerServiceAddress, RedisService.get());
-		var caddyProcess = caddyService.get();
+		var caddySupervisor = new ProcessSupervisor("caddy", caddyService::get);
+		supervisors.add(caddySupervisor);
+		var caddyProcess = caddySupervisor.start();
+		Requires.isTrue(caddyProcess != null, "caddy start failed");
 		logger.info("caddy started:{}", caddyProcess.getProcess().pid());
-		List<ProcessLFP> processList = new ArrayList<>();
-		processList.add(caddyProcess);
-		if (pgBouncerServiceProcess != null)
-			processList.add(pgBouncerServiceProcess);
-		Threads.Futures.join(FutureUtils.makeFirstResultFuture(processList, false));
+		logSinks.add(caddyService.getLogSink());
+		if (appConfig.metricsEnabled()) {
+			MetricsService.get().register(writer -> ProcessSupervisor.collect(writer, supervisors));
+			MetricsService.get().register(writer -> ProcessLogSink.collect(writer, logSinks));
+		}
+		List<ListenableFuture<?>> terminationList = new ArrayList<>();
+		terminationList.add(caddySupervisor.getTerminationFuture());
+		if (pgBouncerServiceTermination != null)
+			terminationList.add(pgBouncerServiceTermination);
+		Threads.Futures.join(FutureUtils.makeFirstResultFuture(terminationList, false));
+	}
+
+	private static void registerMetrics(CertStoreService certStoreService) {
+		var metricsService = MetricsService.get();
+		metricsService.gauge("pgbouncer_app_cert_snapshot_version", "current certificate snapshot version",
+				() -> certStoreService.getSnapshot().getVersion());
+		metricsService.gauge("pgbouncer_app_cert_stores", "certificate stores in the current snapshot",
+				() -> certStoreService.getSnapshot().getCertStores().size());
+		metricsService.counter("pgbouncer_app_key_prefix_lock_wait_seconds",
+				"time spent waiting on the key prefix lock",
+				() -> RedisService.get().getKeyPrefixService().getLockWaitDuration().toNanos() / 1_000_000_000d);
 	}
 
 	private static HttpHandler initializeHandler(HttpHandler httpHandler) {
@@ -1,6 +1,7 @@
 package com.lfp.pgbouncer_app.authenticator;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 
 import com.lfp.connect.undertow.UndertowUtils;
@@ -11,27 +12,36 @@ import com.lfp.joe.jwt.Jwts;
 import com.lfp.joe.jwt.token.JwsLFP;
 import com.lfp.joe.net.status.StatusCodes;
 import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.pgbouncer.PGBouncerAdminCredentials;
 
 import io.jsonwebtoken.SigningKeyResolver;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import one.util.streamex.StreamEx;
 
+/**
+ * answers the pam-http module that pgbouncer consults for every login. the module forwards only the user and password,
+ * so the decision can not depend on the database: a valid jwt logs any user into any database. the admin console secret
+ * is accepted on the same terms, but only for the admin user, which already reaches every database through a jwt. the
+ * secret is generated per process and only sent over the pinned tls connection of the admin client.
+ */
 public class AuthenticatorHandler implements HttpHandler {
 
 	public static AuthenticatorHandler get() {
 		return Instances.get(AuthenticatorHandler.class,
-				() -> new AuthenticatorHandler(AuthenticatorSigningKeyResolver.get()));
+				() -> new AuthenticatorHandler(AuthenticatorSigningKeyResolver.get(), PGBouncerAdminCredentials.get()));
 	}
 
 	private static final boolean SEND_RESPONSE_BODY_ON_SUCCESS = MachineConfig.isDeveloper() && false;
 	private static final HttpHandler UNAUTHORIZED_JWT_HANDLER = new MessageHandler(StatusCodes.UNAUTHORIZED,
 			"invalid jwt");
 	private final SigningKeyResolver signingKeyResolver;
+	private final PGBouncerAdminCredentials adminCredentials;
 
-	public AuthenticatorHandler(SigningKeyResolver signingKeyResolver) {
+	public AuthenticatorHandler(SigningKeyResolver signingKeyResolver, PGBouncerAdminCredentials adminCredentials) {
 		super();
 		this.signingKeyResolver = Objects.requireNonNull(signingKeyResolver);
+		this.adminCredentials = Objects.requireNonNull(adminCredentials);
 	}
 
 	@Override
@@ -62,8 +72,7 @@ public class AuthenticatorHandler implements HttpHandler {
 			exchange.dispatch(hse -> handleRequest(exchange, candidateIterator));
 			return;
 		}
-		var jws = getJws(candidateIterator);
-		if (jws == null) {
+		if (!isAuthorized(StreamEx.of(candidateIterator).toList())) {
 			UNAUTHORIZED_JWT_HANDLER.handleRequest(exchange);
 			return;
 		}
@@ -74,6 +83,20 @@ public class AuthenticatorHandler implements HttpHandler {
 		exchange.endExchange();
 	}
 
+	protected boolean isAuthorized(List<String> candidates) {
+		if (StreamEx.of(candidates).anyMatch(this::isAdminConsoleLogin))
+			return true;
+		return getJws(candidates.iterator()) != null;
+	}
+
+	protected boolean isAdminConsoleLogin(String candidate) {
+		var splitAt = Utils.Strings.indexOf(candidate, ":");
+		if (splitAt <= 0)
+			return false;
+		return adminCredentials.matches(candidate.substring(0, splitAt),
+				candidate.substring(splitAt + 1));
+	}
+
 	protected JwsLFP getJws(Iterator<String> candidateIterator) {
 		while (candidateIterator.hasNext()) {
 			var candidate = candidateIterator.next();
@@ -0,0 +1,73 @@
+package com.lfp.pgbouncer_app.caddy;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.lfp.pgbouncer_app.process.ProcessLogSink;
+import com.lfp.pgbouncer_app.process.ProcessLogSink.Level;
+import com.lfp.pgbouncer_app.process.ProcessOutputReader;
+
+/**
+ * classifies caddy's json log lines, for example
+ * {@code {"level":"error","logger":"tls.issuance.acme","msg":"could not get certificate","error":"..."}}
+ */
+public class CaddyLogParser implements ProcessOutputReader.LineHandler {
+
+	private final ProcessLogSink sink;
+
+	public CaddyLogParser(ProcessLogSink sink) {
+		this.sink = Objects.requireNonNull(sink);
+	}
+
+	@Override
+	public void handle(CharSequence line) {
+		if (line.length() == 0 || line.charAt(0) != '{') {
+			sink.log(Level.INFO, line);
+			return;
+		}
+		JsonObject jo;
+		try {
+			jo = JsonParser.parseString(line.toString()).getAsJsonObject();
+		} catch (RuntimeException e) {
+			sink.log(Level.INFO, line);
+			return;
+		}
+		var level = toLevel(getString(jo, "level"));
+		var loggerName = getString(jo, "logger");
+		var text = (getString(jo, "msg") + " " + getString(jo, "error")).toLowerCase(Locale.ENGLISH);
+		if (text.contains("handshake"))
+			sink.event("tls_handshake_failure");
+		else if (level == Level.ERROR && (loggerName.startsWith("tls") || text.contains("certificate")))
+			sink.event("certificate_error");
+		else if (level == Level.ERROR)
+			sink.event("error");
+		sink.log(level, line);
+	}
+
+	private static String getString(JsonObject jo, String name) {
+		JsonElement je = jo.get(name);
+		if (je == null || !je.isJsonPrimitive())
+			return "";
+		return je.getAsString();
+	}
+
+	private static Level toLevel(String value) {
+		switch (value) {
+		case "error":
+		case "fatal":
+		case "panic":
+		case "dpanic":
+			return Level.ERROR;
+		case "warn":
+			return Level.WARN;
+		case "info":
+			return Level.INFO;
+		default:
+			return Level.DEBUG;
+		}
+	}
+
+}
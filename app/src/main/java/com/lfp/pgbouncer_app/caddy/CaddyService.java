@@ -1,7 +1,12 @@
 package com.lfp.pgbouncer_app.caddy;
 
 import com.lfp.joe.process.ProcessLFP;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +46,7 @@ import com.lfp.joe.core.properties.Configs;
 import com.lfp.joe.net.dns.TLDs;
 import com.lfp.joe.net.http.ip.IPs;
 import com.lfp.joe.net.http.uri.URIs;
+import com.lfp.joe.process.Procs;
 import com.lfp.joe.serial.Serials;
 import com.lfp.joe.utils.Utils;
 import com.lfp.joe.utils.function.Requires;
@@ -49,6 +55,8 @@ import com.lfp.pgbouncer.service.config.PGBouncerServiceConfig;
 import com.lfp.pgbouncer_app.ENVService;
 import com.lfp.pgbouncer_app.config.CaddyExecConfig;
 import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.process.ProcessLogSink;
+import com.lfp.pgbouncer_app.process.ProcessOutputReader;
 import com.lfp.pgbouncer_app.storage.RedisService;
 
 import one.util.streamex.StreamEx;
@@ -58,11 +66,13 @@ public class CaddyService implements Supplier<ProcessLFP> {
 	}.getClass().getEnclosingClass();
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
 	private static final List<String> APPEND_DOT_PROVIDERS = List.of("route53");
+	private static final String LEGACY_CONFIG_FILE_NAME = "caddy.json";
 
 	private final InetSocketAddress serviceAddress;
 	private final InetSocketAddress pgBouncerServiceAddress;
 	private final RedisService redisService;
 	private final MemoizedSupplier<CaddyConfig> caddyConfigSupplier;
+	private final ProcessLogSink logSink = new ProcessLogSink("caddy");
 
 	public CaddyService(InetSocketAddress serviceAddress, InetSocketAddress pgBouncerServiceAddress,
 			RedisService redisService) {
@@ -218,7 +228,64 @@ public class CaddyService implements Supplier<ProcessLFP> {
 		}
 		Requires.isTrue(caddyExec.exists() && caddyExec.canExecute(), "caddy not found:%s",
 				caddyExec.getAbsolutePath());
-		return Caddy.start(caddyExec, this.caddyConfigSupplier.get());
+		var cfg = Configs.get(PGBouncerAppConfig.class);
+		if (!cfg.processOutputParsingEnabled())
+			return Caddy.start(caddyExec, this.caddyConfigSupplier.get());
+		// earlier versions left the config in the data directory
+		deleteConfigFile(new File(cfg.dataDirectory(), LEGACY_CONFIG_FILE_NAME));
+		// launched directly rather than through Caddy.start so stderr reaches the parser
+		var configFile = writeConfigFile();
+		try {
+			var outputReader = new ProcessOutputReader(logSink, new CaddyLogParser(logSink),
+					cfg.processOutputBufferSize());
+			var command = String.format("%s run --config %s", caddyExec.getAbsolutePath(),
+					configFile.getAbsolutePath());
+			var process = Procs.start(command, ctx -> {
+				ctx.disableOutputLog();
+				ctx.redirectOutput(outputReader);
+				ctx.redirectError(outputReader);
+			}, null);
+			process.listener(outputReader::close);
+			process.listener(() -> deleteConfigFile(configFile));
+			return process;
+		} catch (IOException e) {
+			deleteConfigFile(configFile);
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			deleteConfigFile(configFile);
+			throw e;
+		}
+	}
+
+	public ProcessLogSink getLogSink() {
+		return logSink;
+	}
+
+	// the config holds storage credentials. temp files are created readable by the owner only, and the file only
+	// lives as long as the caddy process that reads it
+	private File writeConfigFile() {
+		try {
+			var configFile = Files.createTempFile("caddy-", ".json").toFile();
+			configFile.deleteOnExit();
+			try {
+				Files.writeString(configFile.toPath(), Serials.Gsons.get().toJson(this.caddyConfigSupplier.get()),
+						StandardCharsets.UTF_8);
+			} catch (IOException | RuntimeException e) {
+				deleteConfigFile(configFile);
+				throw e;
+			}
+			return configFile;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void deleteConfigFile(File configFile) {
+		try {
+			Files.deleteIfExists(configFile.toPath());
+		} catch (IOException e) {
+			logger.warn("caddy config delete failed. file:{}", configFile.getAbsolutePath(), e);
+		}
 	}
 
 	public static void main(String[] args) {
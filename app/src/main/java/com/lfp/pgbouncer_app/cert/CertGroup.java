@@ -25,7 +25,7 @@ import one.util.streamex.StreamEx;
 @BeanDefinition
 public class CertGroup implements ImmutableBean {
 
-	private static final String CERTIFICATES_FOLDER = "certificates";
+	public static final String CERTIFICATES_FOLDER = "certificates";
 
 	@PropertyDefinition(validate = "notEmpty")
 	private final String service;
@@ -49,6 +49,12 @@ public class CertGroup implements ImmutableBean {
 
 	}
 
+	public CertGroup toCertGroup() {
+		if (CertGroup.class.equals(getClass()))
+			return this;
+		return CertGroup.builder().service(getService()).domain(getDomain()).name(getName()).build();
+	}
+
 	public static void main(String[] args) {
 		JodaBeans.updateCode();
 	}
@@ -0,0 +1,104 @@
+package com.lfp.pgbouncer_app.cert;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import com.lfp.joe.utils.Utils;
+
+import one.util.streamex.StreamEx;
+
+public class CertIndex {
+
+	private static final String WILDCARD_LABEL = "*";
+	private static final String WILDCARD_FOLDER_PREFIX = "wildcard_.";
+	private static final Comparator<CertStore> NEWEST_FIRST = Comparator
+			.comparing((CertStore v) -> v.getModified().map(Date::getTime).orElse(0l)).reversed();
+
+	// declared after the comparator the constructor sorts with
+	public static final CertIndex EMPTY = new CertIndex(0, List.of());
+
+	private final long version;
+	private final List<CertStore> certStores;
+	private final Node root = new Node();
+
+	public CertIndex(long version, Collection<? extends CertStore> certStores) {
+		this.version = version;
+		this.certStores = Utils.Lots.stream(certStores).nonNull().map(v -> (CertStore) v).sorted(NEWEST_FIRST)
+				.toImmutableList();
+		// newest first, so the first store indexed under a name wins
+		for (var certStore : this.certStores)
+			streamNames(certStore).forEach(name -> put(name, certStore));
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public List<CertStore> getCertStores() {
+		return certStores;
+	}
+
+	public Optional<CertStore> lookup(String host) {
+		var labels = toLabels(host);
+		if (labels == null)
+			return Optional.empty();
+		var node = root;
+		CertStore wildcard = null;
+		for (int i = labels.length - 1; i >= 0; i--) {
+			if (i == 0)
+				wildcard = node.getChild(WILDCARD_LABEL).map(v -> v.certStore).orElse(null);
+			node = node.getChild(labels[i]).orElse(null);
+			if (node == null)
+				break;
+		}
+		if (node != null && node.certStore != null)
+			return Optional.of(node.certStore);
+		return Optional.ofNullable(wildcard);
+	}
+
+	private void put(String name, CertStore certStore) {
+		var labels = toLabels(name);
+		if (labels == null)
+			return;
+		var node = root;
+		for (int i = labels.length - 1; i >= 0; i--)
+			node = node.children.computeIfAbsent(labels[i], nil -> new Node());
+		if (node.certStore == null)
+			node.certStore = certStore;
+	}
+
+	private static StreamEx<String> streamNames(CertStore certStore) {
+		var domain = certStore.getDomain();
+		if (Utils.Strings.startsWithIgnoreCase(domain, WILDCARD_FOLDER_PREFIX))
+			domain = WILDCARD_LABEL + "." + domain.substring(WILDCARD_FOLDER_PREFIX.length());
+		return StreamEx.of(domain).append(certStore.streamSans()).filter(Utils.Strings::isNotBlank).distinct();
+	}
+
+	private static String[] toLabels(String name) {
+		if (Utils.Strings.isBlank(name))
+			return null;
+		name = name.trim().toLowerCase(Locale.ROOT);
+		if (name.endsWith("."))
+			name = name.substring(0, name.length() - 1);
+		if (name.isEmpty())
+			return null;
+		return name.split("\\.");
+	}
+
+	private static class Node {
+
+		private final Map<String, Node> children = new HashMap<>(2);
+		private CertStore certStore;
+
+		private Optional<Node> getChild(String label) {
+			return Optional.ofNullable(children.get(label));
+		}
+	}
+
+}
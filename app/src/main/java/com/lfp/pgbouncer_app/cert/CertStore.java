@@ -1,6 +1,7 @@
 package com.lfp.pgbouncer_app.cert;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -40,11 +41,30 @@ public class CertStore extends CertGroup implements Hashable {
 		return Utils.Crypto.hashMD5(getService(), getDomain(), getProperties(), getKey(), getCert());
 	}
 
+	public boolean contentEquals(CertStore other) {
+		if (other == null)
+			return false;
+		if (other == this)
+			return true;
+		if (getProperties() == other.getProperties() && getKey() == other.getKey() && getCert() == other.getCert())
+			return JodaBeanUtils.equal(getService(), other.getService())
+					&& JodaBeanUtils.equal(getDomain(), other.getDomain());
+		return hash().equals(other.hash());
+	}
+
+	private transient Optional<Date> _modified;
+
 	public Optional<Date> getModified() {
-		var mpStream = StreamEx.of(meta().properties, meta().key(), meta().cert());
-		var dateStream = mpStream.map(v -> v.get(this)).nonNull().mapPartial(v -> v.getModified());
-		dateStream = dateStream.sortedBy(v -> -1 * v.getTime());
-		return dateStream.findFirst();
+		if (_modified == null) {
+			Date modified = null;
+			for (var storageReader : List.of(getProperties(), getKey(), getCert())) {
+				var value = storageReader.getModified().orElse(null);
+				if (value != null && (modified == null || value.after(modified)))
+					modified = value;
+			}
+			_modified = Optional.ofNullable(modified);
+		}
+		return _modified;
 	}
 
 	private transient JsonElement _propertiesJson;
@@ -68,8 +88,23 @@ public class CertStore extends CertGroup implements Hashable {
 	}
 
 	public Optional<String> getSans() {
-		return streamPropertyValues("sans").mapPartial(Serials.Gsons::tryGetAsString).filter(Utils.Strings::isNotBlank)
-				.findFirst();
+		return streamSans().findFirst();
+	}
+
+	public StreamEx<String> streamSans() {
+		var sans = streamPropertyValues("sans").mapPartial(Serials.Gsons::tryGetAsString);
+		return sans.append(getCertificateData().streamSans()).filter(Utils.Strings::isNotBlank).distinct();
+	}
+
+	private transient CertificateData _certificateData;
+
+	public CertificateData getCertificateData() {
+		if (_certificateData == null)
+			synchronized (this) {
+				if (_certificateData == null)
+					_certificateData = CertificateData.parse(getCert().getValue(), getKey().getValue());
+			}
+		return _certificateData;
 	}
 
 	public Optional<JsonObject> getIssuerData() {
@@ -0,0 +1,184 @@
+package com.lfp.pgbouncer_app.cert;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+import org.redisson.api.RTopic;
+import org.redisson.client.codec.StringCodec;
+import org.threadly.concurrent.future.ListenableFuture;
+import org.threadly.concurrent.future.SettableListenableFuture;
+
+import com.lfp.data.redisson.tools.concurrent.KeepAliveSemaphore;
+import com.lfp.joe.core.function.Nada;
+import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.serial.Serials;
+import com.lfp.joe.threads.Threads;
+import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.cert.CertStoreService.ModificationEvent;
+import com.lfp.pgbouncer_app.storage.RedisService;
+
+import one.util.streamex.StreamEx;
+
+public class CertStoreLeadership extends Scrapable.Impl {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final Duration ELECTION_RETRY_DELAY = Duration.ofSeconds(5);
+	private static final long SEQUENCE_UNKNOWN = -1;
+
+	private final RedisService redisService;
+	private final String name;
+	private final KeepAliveSemaphore semaphore;
+	private final RTopic manifestTopic;
+	private final BiConsumer<List<CertGroup>, Boolean> manifestListener;
+	private final Runnable leaderListener;
+	private volatile boolean leader;
+	private volatile SettableListenableFuture<Nada> leaderReleaseFuture;
+	private volatile ListenableFuture<Nada> electionFuture;
+	private long lastSequence = SEQUENCE_UNKNOWN;
+
+	/**
+	 * manifestListener receives the changed groups and whether a full update is required because a manifest was
+	 * missed. leaderListener runs each time this replica becomes the leader. the election begins on start.
+	 */
+	public CertStoreLeadership(RedisService redisService, String name,
+			BiConsumer<List<CertGroup>, Boolean> manifestListener, Runnable leaderListener) {
+		this.redisService = Objects.requireNonNull(redisService);
+		this.name = Objects.requireNonNull(name);
+		this.manifestListener = Objects.requireNonNull(manifestListener);
+		this.leaderListener = Objects.requireNonNull(leaderListener);
+		var client = this.redisService.getClient();
+		this.semaphore = new KeepAliveSemaphore(client, 1, getStorageKey("leader"));
+		this.manifestTopic = client.getTopic(getStorageKey("manifest"), StringCodec.INSTANCE);
+		var listenerId = this.manifestTopic.addListener(String.class, (channel, message) -> {
+			try {
+				onManifest(message);
+			} catch (Throwable t) {
+				if (!Utils.Exceptions.isCancelException(t))
+					logger.warn("manifest listener error. name:{}", name, t);
+			}
+		});
+		this.onScrap(() -> this.manifestTopic.removeListener(listenerId));
+		this.onScrap(() -> {
+			var releaseFuture = this.leaderReleaseFuture;
+			if (releaseFuture != null)
+				releaseFuture.setResult(Nada.get());
+			var electionFuture = this.electionFuture;
+			if (electionFuture != null)
+				electionFuture.cancel(true);
+		});
+	}
+
+	public void start() {
+		elect();
+	}
+
+	public boolean isLeader() {
+		return leader && !this.isScrapped();
+	}
+
+	public void publish(ModificationEvent event) {
+		if (event == null || event.isEmpty() || !isLeader())
+			return;
+		var groups = StreamEx.of(event.getAdded()).append(event.getUpdated()).map(CertGroup::toCertGroup)
+				.append(StreamEx.of(event.getRemovedKeys()).map(CertGroup::toCertGroup)).distinct().toList();
+		var manifest = new Manifest();
+		manifest.sequence = this.redisService.getClient().getAtomicLong(getStorageKey("sequence")).incrementAndGet();
+		manifest.groups = StreamEx.of(groups).map(ManifestGroup::from).toList();
+		synchronized (this) {
+			lastSequence = manifest.sequence;
+		}
+		this.manifestTopic.publish(Serials.Gsons.get().toJson(manifest));
+	}
+
+	protected void onManifest(String message) {
+		if (isLeader())
+			return;
+		var manifest = Serials.Gsons.get().fromJson(message, Manifest.class);
+		if (manifest == null)
+			return;
+		boolean full;
+		synchronized (this) {
+			if (manifest.sequence <= lastSequence)
+				return;
+			full = lastSequence == SEQUENCE_UNKNOWN || manifest.sequence != lastSequence + 1;
+			lastSequence = manifest.sequence;
+		}
+		var groups = Utils.Lots.stream(manifest.groups).nonNull().mapPartial(ManifestGroup::toCertGroup).toList();
+		manifestListener.accept(groups, full);
+	}
+
+	private void elect() {
+		if (this.isScrapped())
+			return;
+		var electionFuture = semaphore.acquireAsyncKeepAliveFlatSupply(() -> {
+			var releaseFuture = new SettableListenableFuture<Nada>(false);
+			this.leaderReleaseFuture = releaseFuture;
+			if (this.isScrapped())
+				releaseFuture.setResult(Nada.get());
+			else {
+				leader = true;
+				logger.info("leadership acquired. name:{}", name);
+				Threads.Pools.centralPool().execute(() -> {
+					try {
+						leaderListener.run();
+					} catch (Throwable t) {
+						if (!Utils.Exceptions.isCancelException(t))
+							logger.warn("leader listener error. name:{}", name, t);
+					}
+				});
+			}
+			return releaseFuture;
+		});
+		this.electionFuture = electionFuture;
+		electionFuture.listener(() -> {
+			if (leader)
+				logger.info("leadership released. name:{}", name);
+			leader = false;
+			synchronized (this) {
+				lastSequence = SEQUENCE_UNKNOWN;
+			}
+			if (!this.isScrapped())
+				Threads.Pools.centralPool().schedule(this::elect, ELECTION_RETRY_DELAY.toMillis());
+		});
+	}
+
+	private String getStorageKey(String suffix) {
+		return String.format("%s/%s/%s", redisService.getKeyPrefix(), name, suffix);
+	}
+
+	private static class Manifest {
+
+		private long sequence;
+
+		private List<ManifestGroup> groups;
+	}
+
+	private static class ManifestGroup {
+
+		private String service;
+
+		private String domain;
+
+		private String name;
+
+		private static ManifestGroup from(CertGroup certGroup) {
+			var manifestGroup = new ManifestGroup();
+			manifestGroup.service = certGroup.getService();
+			manifestGroup.domain = certGroup.getDomain();
+			manifestGroup.name = certGroup.getName();
+			return manifestGroup;
+		}
+
+		private Optional<CertGroup> toCertGroup() {
+			if (StreamEx.of(service, domain, name).anyMatch(Utils.Strings::isBlank))
+				return Optional.empty();
+			return Optional.of(CertGroup.builder().service(service).domain(domain).name(name).build());
+		}
+	}
+
+}
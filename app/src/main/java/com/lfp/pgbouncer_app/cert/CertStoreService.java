@@ -2,6 +2,8 @@ package com.lfp.pgbouncer_app.cert;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -9,7 +11,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 
 import org.redisson.client.RedisException;
@@ -17,19 +22,21 @@ import org.threadly.concurrent.future.FutureUtils;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
 import com.lfp.joe.beans.joda.JodaBeans;
 import com.lfp.joe.core.classpath.Instances;
 import com.lfp.joe.core.function.Nada;
 import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.core.properties.Configs;
 import com.lfp.joe.threads.Threads;
 import com.lfp.joe.utils.Utils;
 import com.lfp.joe.utils.crypto.CertificateParser;
 import com.lfp.pgbouncer_app.ENVService;
+import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
 import com.lfp.pgbouncer_app.storage.RedisService;
 import com.lfp.pgbouncer_app.storage.StorageCrypto.DecryptException;
 import com.lfp.pgbouncer_app.storage.StorageReader;
+import com.lfp.pgbouncer_app.storage.StorageReaderSync;
+import com.lfp.pgbouncer_app.storage.StorageSnapshot;
 
 import at.favre.lib.bytes.Bytes;
 import one.util.streamex.StreamEx;
@@ -46,61 +53,131 @@ public class CertStoreService extends Scrapable.Impl {
 	}.getClass().getEnclosingClass();
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
 
-	private static final Duration POLL_INTERVAL = Duration.ofSeconds(5);
 	private static final Duration LOG_DECRYPT_ERROR_INTERVAL = Duration.ofSeconds(10);
+	private static final Duration KEYSPACE_NOTIFICATION_DELAY = Duration.ofMillis(250);
+	private static final Duration POLL_FALLBACK_DELAY = Duration.ofSeconds(30);
+	private static final String SNAPSHOT_NAME = "cert-store";
 
 	private final Map<CertGroup, CertStore> certMap = new ConcurrentHashMap<>();
-	private final EventBus modificationListenerEventBus = new EventBus();
+	private final AtomicLong certIndexVersion = new AtomicLong();
+	private volatile CertIndex certIndex = CertIndex.EMPTY;
+	private final Set<CertGroup> pendingGroups = new LinkedHashSet<>();
+	private final ModificationDispatcher modificationDispatcher;
 	private final Cache<Bytes, Nada> logDecryptErrorCache = Caffeine.newBuilder()
 			.expireAfterWrite(LOG_DECRYPT_ERROR_INTERVAL).build();
+	private final BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler = (sr, t) -> {
+		var fingerprint = Utils.Bits.from(sr.getKey()).append(t.getFingerprint());
+		logDecryptErrorCache.get(fingerprint, nil -> {
+			logger.warn(StorageReader.createDecryptErrorMessage(sr, t));
+			return Nada.get();
+		});
+		return null;
+	};
 	private final RedisService redisService;
+	private final StorageReaderSync storageReaderSync;
+	private final StorageSnapshot storageSnapshot;
+	private final RenewalScheduler renewalScheduler;
+	private final CertStoreLeadership leadership;
+	private final Duration followerRefreshInterval;
+	private volatile long lastUpdateAt;
+	private final Object pollLock = new Object();
+	private Future<?> pollFuture;
+	private long pollGeneration;
 
 	public CertStoreService(RedisService redisServce) {
 		this.redisService = Objects.requireNonNull(redisServce);
-		this.update();
-		Runnable pollTask = () -> {
-			try {
-				poll();
-			} catch (Throwable t) {
-				while (t instanceof RedisException) {
-					var cause = t.getCause();
-					if (cause == null)
-						break;
-					t = cause;
+		this.storageReaderSync = new StorageReaderSync(this.redisService, decryptErrorHandler);
+		this.storageSnapshot = StorageSnapshot.tryCreate(this.redisService, SNAPSHOT_NAME).orElse(null);
+		this.modificationDispatcher = new ModificationDispatcher(
+				Configs.get(PGBouncerAppConfig.class).certificateModificationQuietWindow());
+		this.onScrap(this.modificationDispatcher::scrap);
+		// a restored snapshot is reconciled by an immediate poll in the background
+		var restored = restoreSnapshot();
+		if (!restored)
+			this.update();
+		var cfg = Configs.get(PGBouncerAppConfig.class);
+		this.followerRefreshInterval = cfg.certificateFollowerRefreshInterval();
+		if (cfg.certificateLeaderElectionEnabled()) {
+			this.leadership = new CertStoreLeadership(this.redisService, SNAPSHOT_NAME, this::onManifest,
+					this::onLeadershipAcquired);
+			this.onScrap(this.leadership::scrap);
+		} else
+			this.leadership = null;
+		if (cfg.storageKeyspaceNotificationsEnabled()) {
+			var listenerScrapable = this.redisService.addKeyspaceListener(this::onKeyspaceNotification,
+					CertGroup.CERTIFICATES_FOLDER);
+			this.onScrap(listenerScrapable::scrap);
+			this.renewalScheduler = null;
+			Runnable pollTask = () -> {
+				try {
+					poll();
+				} catch (Throwable t) {
+					logPollError(t);
 				}
-				if (!Utils.Exceptions.isCancelException(t))
-					logger.warn("poll error", t);
-			}
-		};
-		var pollFuture = FutureUtils.scheduleWhile(Threads.Pools.centralPool(), POLL_INTERVAL.toMillis(), true,
-				pollTask, () -> !this.isScrapped());
-		Threads.Futures.onScrapCancel(this, pollFuture, true);
+			};
+			var pollFuture = FutureUtils.scheduleWhile(Threads.Pools.centralPool(),
+					cfg.storageKeyspaceNotificationsPollInterval().toMillis(), true, pollTask,
+					() -> !this.isScrapped());
+			Threads.Futures.onScrapCancel(this, pollFuture, true);
+		} else {
+			this.renewalScheduler = new RenewalScheduler(cfg.certificateRefreshMinInterval(),
+					cfg.certificateRefreshMaxInterval(), cfg.certificateRenewalWindow());
+			this.renewalScheduler.update(certMap.values());
+			this.onScrap(() -> {
+				synchronized (pollLock) {
+					pollGeneration++;
+					if (pollFuture != null)
+						pollFuture.cancel(true);
+				}
+			});
+			// the blocking update above already read everything, so only a restored snapshot polls right away
+			schedulePoll(restored ? 0 : this.renewalScheduler.nextDelayMillis(true));
+		}
+		if (this.leadership != null)
+			this.leadership.start();
+	}
+
+	public CertIndex getSnapshot() {
+		return certIndex;
 	}
 
 	public StreamEx<CertStore> streamCertStores() {
-		return Utils.Lots.stream(certMap).values().sortedBy(v -> -1 * v.getModified().map(Date::getTime).orElse(0l));
+		return StreamEx.of(certIndex.getCertStores());
+	}
+
+	public Optional<CertStore> lookup(String host) {
+		return certIndex.lookup(host);
 	}
 
 	public Scrapable addModificationEventListener(ModificationEventListener listener) {
 		Objects.requireNonNull(listener);
-		this.modificationListenerEventBus.register(listener);
-		return Scrapable.create(() -> this.modificationListenerEventBus.unregister(listener));
+		return this.modificationDispatcher.addListener(listener);
 	}
 
 	protected Optional<ModificationEvent> update() {
+		return update(null);
+	}
+
+	protected synchronized Optional<ModificationEvent> update(Collection<CertGroup> groups) {
+		lastUpdateAt = System.currentTimeMillis();
 		var added = new LinkedHashSet<CertStore>();
 		var updated = new LinkedHashSet<CertStore>();
-		var removed = new LinkedHashMap<>(certMap);
-		BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler = (sr, t) -> {
-			var hash = Utils.Crypto.hashMD5(sr.getKey(), t.getCipher());
-			logDecryptErrorCache.get(hash, nil -> {
-				logger.warn(StorageReader.createDecryptErrorMessage(sr, t));
-				return Nada.get();
-			});
-			return null;
-		};
-		var groupToStoreReaderMap = this.redisService.streamReaders(decryptErrorHandler)
-				.mapToEntry(v -> CertGroup.tryBuild(v).orElse(null)).invert().nonNullKeys().grouping();
+		var removed = new LinkedHashMap<CertGroup, CertStore>();
+		var groupToStoreReaderMap = new LinkedHashMap<CertGroup, List<StorageReader>>();
+		if (groups == null) {
+			removed.putAll(certMap);
+			var storageReaders = this.storageReaderSync.sync(CertGroup.CERTIFICATES_FOLDER);
+			appendStorageReaders(groupToStoreReaderMap, storageReaders, null);
+		} else {
+			for (var group : groups) {
+				var current = certMap.get(group);
+				if (current != null)
+					removed.put(group, current);
+				var storageReaders = this.storageReaderSync.sync(CertGroup.CERTIFICATES_FOLDER, group.getService(),
+						group.getDomain());
+				appendStorageReaders(groupToStoreReaderMap, storageReaders, group);
+			}
+		}
 		for (var ent : groupToStoreReaderMap.entrySet()) {
 			var group = ent.getKey();
 			var storageReaders = ent.getValue();
@@ -109,7 +186,7 @@ public class CertStoreService extends Scrapable.Impl {
 				continue;
 			removed.remove(group);
 			certMap.compute(group, (k, current) -> {
-				if (current != null && current.hash().equals(certStore.hash()))
+				if (current != null && current.contentEquals(certStore))
 					return current;
 				if (current == null)
 					added.add(certStore);
@@ -118,17 +195,205 @@ public class CertStoreService extends Scrapable.Impl {
 				return certStore;
 			});
 		}
-		removed.forEach(certMap::remove);
+		removed.keySet().forEach(certMap::remove);
 		if (added.isEmpty() && updated.isEmpty() && removed.isEmpty())
 			return Optional.empty();
+		publishSnapshot();
+		writeSnapshot();
 		var event = new ModificationEvent(added, updated, removed.values());
 		return Optional.of(event);
 	}
 
-	protected void poll() {
-		ModificationEvent event = update().orElse(null);
-		if (event != null)
-			this.modificationListenerEventBus.post(event);
+	protected boolean restoreSnapshot() {
+		if (storageSnapshot == null)
+			return false;
+		List<StorageReader> storageReaders;
+		try {
+			storageReaders = storageSnapshot.read(decryptErrorHandler);
+		} catch (Throwable t) {
+			logger.warn("snapshot restore failed. file:{}", storageSnapshot.getFile().getAbsolutePath(), t);
+			return false;
+		}
+		var groupToStoreReaderMap = new LinkedHashMap<CertGroup, List<StorageReader>>();
+		appendStorageReaders(groupToStoreReaderMap, storageReaders, null);
+		for (var ent : groupToStoreReaderMap.entrySet()) {
+			var certStore = getCertStore(ent.getKey(), ent.getValue()).orElse(null);
+			if (certStore != null)
+				certMap.put(ent.getKey(), certStore);
+		}
+		if (certMap.isEmpty())
+			return false;
+		publishSnapshot();
+		logger.info("snapshot restored. certStores:{} file:{}", certMap.size(),
+				storageSnapshot.getFile().getAbsolutePath());
+		return true;
+	}
+
+	protected void publishSnapshot() {
+		this.certIndex = new CertIndex(certIndexVersion.incrementAndGet(), certMap.values());
+		if (renewalScheduler != null)
+			renewalScheduler.update(certMap.values());
+	}
+
+	protected void writeSnapshot() {
+		if (storageSnapshot == null)
+			return;
+		var storageReaders = Utils.Lots.stream(certMap.values())
+				.flatMap(v -> StreamEx.of(v.getProperties(), v.getKey(), v.getCert()))
+				.toList();
+		try {
+			storageSnapshot.write(storageReaders);
+		} catch (Throwable t) {
+			logger.warn("snapshot write failed. file:{}", storageSnapshot.getFile().getAbsolutePath(), t);
+		}
+	}
+
+	protected boolean poll() {
+		if (!isPollingReplica()) {
+			// followers only fall back to a full read when no manifest has arrived for a while
+			if (System.currentTimeMillis() - lastUpdateAt < followerRefreshInterval.toMillis())
+				return false;
+		}
+		var event = update().orElse(null);
+		if (event == null)
+			return false;
+		post(event);
+		return true;
+	}
+
+	protected boolean isPollingReplica() {
+		return leadership == null || leadership.isLeader();
+	}
+
+	protected void post(ModificationEvent event) {
+		// the snapshot already changed, so local listeners must not depend on redis being reachable
+		this.modificationDispatcher.post(event);
+		if (leadership == null)
+			return;
+		try {
+			leadership.publish(event);
+		} catch (Throwable t) {
+			if (!Utils.Exceptions.isCancelException(t))
+				logger.warn("manifest publish failed, followers fall back to a full refresh", t);
+		}
+	}
+
+	protected void onManifest(List<CertGroup> groups, boolean full) {
+		Threads.Pools.centralPool().execute(() -> {
+			if (this.isScrapped())
+				return;
+			try {
+				var event = full ? update() : update(groups);
+				event.ifPresent(this.modificationDispatcher::post);
+			} catch (Throwable t) {
+				logPollError(t);
+			}
+		});
+	}
+
+	/**
+	 * replaces any pending poll. a poll that is already running does not reschedule itself afterwards.
+	 */
+	protected void schedulePoll(long delayMillis) {
+		synchronized (pollLock) {
+			if (this.isScrapped())
+				return;
+			if (pollFuture != null)
+				pollFuture.cancel(false);
+			var generation = ++pollGeneration;
+			this.pollFuture = Threads.Pools.centralPool().submitScheduled(() -> runPoll(generation), delayMillis);
+		}
+	}
+
+	private void runPoll(long generation) {
+		// whatever fails below, the chain continues
+		var delay = POLL_FALLBACK_DELAY.toMillis();
+		try {
+			var modified = true;
+			try {
+				modified = poll();
+			} catch (Throwable t) {
+				logPollError(t);
+			}
+			delay = renewalScheduler.nextDelayMillis(modified);
+			if (!isPollingReplica()) {
+				// backoff applies to the leader, followers still refresh on their own interval
+				var followerDelay = followerRefreshInterval.toMillis()
+						- (System.currentTimeMillis() - lastUpdateAt);
+				delay = Math.max(0, Math.min(delay, followerDelay));
+			}
+		} catch (Throwable t) {
+			logPollError(t);
+		} finally {
+			synchronized (pollLock) {
+				if (generation == pollGeneration)
+					schedulePoll(delay);
+			}
+		}
+	}
+
+	protected void onLeadershipAcquired() {
+		if (this.isScrapped())
+			return;
+		// the previous leader may have left changes unscanned, so a new leader does not wait out a follower delay
+		if (renewalScheduler != null)
+			schedulePoll(0);
+		else {
+			try {
+				poll();
+			} catch (Throwable t) {
+				logPollError(t);
+			}
+		}
+	}
+
+	protected void onKeyspaceNotification(StorageReader storageReader) {
+		if (!isPollingReplica())
+			return;
+		var group = CertGroup.tryBuild(storageReader).orElse(null);
+		if (group == null)
+			return;
+		synchronized (pendingGroups) {
+			if (!pendingGroups.add(group) || pendingGroups.size() > 1)
+				return;
+		}
+		Threads.Pools.centralPool().schedule(() -> {
+			List<CertGroup> groups;
+			synchronized (pendingGroups) {
+				groups = new ArrayList<>(pendingGroups);
+				pendingGroups.clear();
+			}
+			if (this.isScrapped())
+				return;
+			try {
+				update(groups).ifPresent(this::post);
+			} catch (Throwable t) {
+				logPollError(t);
+			}
+		}, KEYSPACE_NOTIFICATION_DELAY.toMillis());
+	}
+
+	private static void appendStorageReaders(Map<CertGroup, List<StorageReader>> groupToStoreReaderMap,
+			Iterable<StorageReader> storageReaders, CertGroup groupFilter) {
+		for (var storageReader : storageReaders) {
+			var group = CertGroup.tryBuild(storageReader).orElse(null);
+			if (group == null)
+				continue;
+			if (groupFilter != null && !groupFilter.equals(group))
+				continue;
+			groupToStoreReaderMap.computeIfAbsent(group, nil -> new ArrayList<>()).add(storageReader);
+		}
+	}
+
+	private static void logPollError(Throwable t) {
+		while (t instanceof RedisException) {
+			var cause = t.getCause();
+			if (cause == null)
+				break;
+			t = cause;
+		}
+		if (!Utils.Exceptions.isCancelException(t))
+			logger.warn("poll error", t);
 	}
 
 	private static Optional<CertStore> getCertStore(CertGroup group, List<StorageReader> storageReaders) {
@@ -159,7 +424,6 @@ public class CertStoreService extends Scrapable.Impl {
 
 	public static interface ModificationEventListener {
 
-		@Subscribe
 		public void onModification(ModificationEvent event);
 	}
 
@@ -170,7 +434,7 @@ public class CertStoreService extends Scrapable.Impl {
 		private final List<CertGroup> removed;
 
 		public ModificationEvent(Iterable<? extends CertStore> added, Iterable<? extends CertStore> updated,
-				Iterable<? extends CertStore> removed) {
+				Iterable<? extends CertGroup> removed) {
 			super();
 			this.added = nonNullDistinctList(added);
 			this.updated = nonNullDistinctList(updated);
@@ -189,6 +453,44 @@ public class CertStoreService extends Scrapable.Impl {
 			return removed;
 		}
 
+		public boolean isEmpty() {
+			return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+		}
+
+		public ModificationEvent merge(ModificationEvent next) {
+			if (next == null || next.isEmpty())
+				return this;
+			if (this.isEmpty())
+				return next;
+			var addedMap = new LinkedHashMap<CertGroup, CertStore>();
+			var updatedMap = new LinkedHashMap<CertGroup, CertStore>();
+			var removedMap = new LinkedHashMap<CertGroup, CertGroup>();
+			this.added.forEach(v -> addedMap.put(v.toCertGroup(), v));
+			this.updated.forEach(v -> updatedMap.put(v.toCertGroup(), v));
+			this.removed.forEach(v -> removedMap.put(v.toCertGroup(), v));
+			for (var certStore : next.added) {
+				var group = certStore.toCertGroup();
+				if (removedMap.remove(group) != null)
+					updatedMap.put(group, certStore);
+				else
+					addedMap.put(group, certStore);
+			}
+			for (var certStore : next.updated) {
+				var group = certStore.toCertGroup();
+				if (addedMap.containsKey(group))
+					addedMap.put(group, certStore);
+				else
+					updatedMap.put(group, certStore);
+			}
+			for (var certGroup : next.removed) {
+				var group = certGroup.toCertGroup();
+				updatedMap.remove(group);
+				if (addedMap.remove(group) == null)
+					removedMap.put(group, certGroup);
+			}
+			return new ModificationEvent(addedMap.values(), updatedMap.values(), removedMap.values());
+		}
+
 		@Override
 		public String toString() {
 			return "ModificationEvent [added=" + added + ", updated=" + updated + ", removed=" + removed + "]";
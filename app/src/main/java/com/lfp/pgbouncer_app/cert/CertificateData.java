@@ -0,0 +1,186 @@
+package com.lfp.pgbouncer_app.cert;
+
+import java.io.ByteArrayInputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import com.lfp.joe.utils.Utils;
+
+import at.favre.lib.bytes.Bytes;
+import one.util.streamex.StreamEx;
+
+public class CertificateData {
+
+	public static final CertificateData EMPTY = new CertificateData(List.of(), null);
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final Pattern PEM_PATTERN = Pattern
+			.compile("-----BEGIN ([A-Z0-9 ]+)-----([A-Za-z0-9+/=\\s]+)-----END \\1-----");
+	private static final String[] KEY_ALGORITHMS = { "EC", "RSA", "Ed25519", "DSA" };
+	private static final String OID_EC_PUBLIC_KEY = "1.2.840.10045.2.1";
+	private static final String OID_RSA_ENCRYPTION = "1.2.840.113549.1.1.1";
+	private static final int SAN_TYPE_DNS = 2;
+
+	private final List<X509Certificate> certificates;
+	private final PrivateKey privateKey;
+
+	public CertificateData(List<X509Certificate> certificates, PrivateKey privateKey) {
+		this.certificates = List.copyOf(certificates);
+		this.privateKey = privateKey;
+	}
+
+	public List<X509Certificate> getCertificates() {
+		return certificates;
+	}
+
+	public Optional<X509Certificate> getCertificate() {
+		return certificates.stream().findFirst();
+	}
+
+	public Optional<PrivateKey> getPrivateKey() {
+		return Optional.ofNullable(privateKey);
+	}
+
+	public Optional<Date> getNotBefore() {
+		return getCertificate().map(X509Certificate::getNotBefore);
+	}
+
+	public Optional<Date> getNotAfter() {
+		return getCertificate().map(X509Certificate::getNotAfter);
+	}
+
+	public StreamEx<String> streamSans() {
+		var certificate = getCertificate().orElse(null);
+		if (certificate == null)
+			return StreamEx.empty();
+		try {
+			var sans = certificate.getSubjectAlternativeNames();
+			if (sans == null)
+				return StreamEx.empty();
+			return StreamEx.of(sans)
+					.filter(v -> v.size() > 1 && Integer.valueOf(SAN_TYPE_DNS).equals(v.get(0)))
+					.map(v -> v.get(1))
+					.select(String.class);
+		} catch (GeneralSecurityException e) {
+			return StreamEx.empty();
+		}
+	}
+
+	public Optional<Bytes> getFingerprint() {
+		return getCertificate().map(v -> {
+			try {
+				return Utils.Bits.from(MessageDigest.getInstance("SHA-256").digest(v.getEncoded()));
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	public Map<String, Object> toSummary() {
+		var summary = new LinkedHashMap<String, Object>();
+		getCertificate().ifPresent(v -> summary.put("subject", v.getSubjectX500Principal().getName()));
+		getCertificate().ifPresent(v -> summary.put("issuer", v.getIssuerX500Principal().getName()));
+		summary.put("sans", streamSans().toList());
+		getNotBefore().ifPresent(v -> summary.put("notBefore", v));
+		getNotAfter().ifPresent(v -> summary.put("notAfter", v));
+		getFingerprint().ifPresent(v -> summary.put("sha256", v.encodeHex()));
+		summary.put("chainLength", certificates.size());
+		getPrivateKey().ifPresent(v -> summary.put("keyAlgorithm", v.getAlgorithm()));
+		return summary;
+	}
+
+	public static CertificateData parse(Bytes certValue, Bytes keyValue) {
+		var certificates = new ArrayList<X509Certificate>();
+		PrivateKey privateKey = null;
+		try {
+			var certificateFactory = CertificateFactory.getInstance("X.509");
+			for (var pem : parsePem(certValue)) {
+				if (!"CERTIFICATE".equals(pem.getKey()))
+					continue;
+				var certificate = certificateFactory.generateCertificate(new ByteArrayInputStream(pem.getValue()));
+				certificates.add((X509Certificate) certificate);
+			}
+		} catch (GeneralSecurityException | RuntimeException e) {
+			logger.warn("certificate parse failed", e);
+		}
+		for (var pem : parsePem(keyValue)) {
+			privateKey = parsePrivateKey(pem.getKey(), pem.getValue()).orElse(null);
+			if (privateKey != null)
+				break;
+		}
+		return new CertificateData(certificates, privateKey);
+	}
+
+	// a value with any block that doesn't decode parses as empty, rather than as a partial chain or an exception
+	private static List<Map.Entry<String, byte[]>> parsePem(Bytes value) {
+		if (value == null || value.isEmpty())
+			return List.of();
+		var matcher = PEM_PATTERN.matcher(value.encodeUtf8());
+		var pems = new ArrayList<Map.Entry<String, byte[]>>();
+		while (matcher.find()) {
+			try {
+				pems.add(Map.entry(matcher.group(1), Base64.getMimeDecoder().decode(matcher.group(2))));
+			} catch (IllegalArgumentException e) {
+				logger.warn("pem decode failed. type:{}", matcher.group(1), e);
+				return List.of();
+			}
+		}
+		return pems;
+	}
+
+	private static Optional<PrivateKey> parsePrivateKey(String type, byte[] der) {
+		byte[] pkcs8;
+		try {
+			if ("PRIVATE KEY".equals(type))
+				pkcs8 = der;
+			else if ("EC PRIVATE KEY".equals(type))
+				pkcs8 = wrapSec1(der);
+			else if ("RSA PRIVATE KEY".equals(type))
+				pkcs8 = wrapPkcs8(Der.sequence(Der.oid(OID_RSA_ENCRYPTION), Der.nullValue()), der);
+			else
+				return Optional.empty();
+		} catch (RuntimeException e) {
+			logger.warn("private key parse failed. type:{}", type, e);
+			return Optional.empty();
+		}
+		var keySpec = new PKCS8EncodedKeySpec(pkcs8);
+		for (var algorithm : KEY_ALGORITHMS) {
+			try {
+				return Optional.of(KeyFactory.getInstance(algorithm).generatePrivate(keySpec));
+			} catch (GeneralSecurityException e) {
+				// try the next algorithm
+			}
+		}
+		logger.warn("private key parse failed. type:{}", type);
+		return Optional.empty();
+	}
+
+	// SEC1 keys carry their curve oid in the [0] parameters field, which pkcs8 moves into the algorithm identifier
+	private static byte[] wrapSec1(byte[] sec1) {
+		var fields = Der.parse(sec1).get(0).getChildren();
+		var curve = StreamEx.of(fields).filter(v -> v.getTag() == 0xa0).flatCollection(Der.Element::getChildren)
+				.findFirst(v -> v.getTag() == Der.TAG_OID).orElseThrow(
+						() -> new IllegalArgumentException("sec1 key without named curve"));
+		return wrapPkcs8(Der.sequence(Der.oid(OID_EC_PUBLIC_KEY), curve.getEncoded()), sec1);
+	}
+
+	private static byte[] wrapPkcs8(byte[] algorithmIdentifier, byte[] privateKey) {
+		return Der.sequence(Der.integer(0), algorithmIdentifier, Der.octetString(privateKey));
+	}
+
+}
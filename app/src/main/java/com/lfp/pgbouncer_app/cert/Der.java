@@ -0,0 +1,185 @@
+package com.lfp.pgbouncer_app.cert;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Der {
+
+	public static final int TAG_INTEGER = 0x02;
+	public static final int TAG_BIT_STRING = 0x03;
+	public static final int TAG_OCTET_STRING = 0x04;
+	public static final int TAG_NULL = 0x05;
+	public static final int TAG_OID = 0x06;
+	public static final int TAG_SEQUENCE = 0x30;
+	public static final int TAG_SET = 0x31;
+	public static final int TAG_UTF8_STRING = 0x0c;
+	public static final int TAG_UTC_TIME = 0x17;
+	public static final int TAG_GENERALIZED_TIME = 0x18;
+	public static final int TAG_CONTEXT = 0x80;
+	public static final int TAG_CONSTRUCTED_CONTEXT = 0xa0;
+	private static final DateTimeFormatter UTC_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyMMddHHmmss'Z'")
+			.withZone(ZoneOffset.UTC);
+	private static final DateTimeFormatter GENERALIZED_TIME_FORMATTER = DateTimeFormatter
+			.ofPattern("yyyyMMddHHmmss'Z'").withZone(ZoneOffset.UTC);
+
+	protected Der() {
+	}
+
+	public static byte[] tlv(int tag, byte[]... contents) {
+		var length = 0;
+		for (var content : contents)
+			length += content.length;
+		var out = new ByteArrayOutputStream(length + 6);
+		out.write(tag);
+		if (length < 0x80)
+			out.write(length);
+		else {
+			var lengthBytes = BigInteger.valueOf(length).toByteArray();
+			var offset = lengthBytes[0] == 0 ? 1 : 0;
+			out.write(0x80 | (lengthBytes.length - offset));
+			out.write(lengthBytes, offset, lengthBytes.length - offset);
+		}
+		for (var content : contents)
+			out.write(content, 0, content.length);
+		return out.toByteArray();
+	}
+
+	public static byte[] sequence(byte[]... contents) {
+		return tlv(TAG_SEQUENCE, contents);
+	}
+
+	public static byte[] set(byte[]... contents) {
+		return tlv(TAG_SET, contents);
+	}
+
+	public static byte[] integer(BigInteger value) {
+		return tlv(TAG_INTEGER, value.toByteArray());
+	}
+
+	public static byte[] integer(long value) {
+		return integer(BigInteger.valueOf(value));
+	}
+
+	public static byte[] octetString(byte[] value) {
+		return tlv(TAG_OCTET_STRING, value);
+	}
+
+	public static byte[] bitString(byte[] value) {
+		var content = new byte[value.length + 1];
+		System.arraycopy(value, 0, content, 1, value.length);
+		return tlv(TAG_BIT_STRING, content);
+	}
+
+	public static byte[] utf8String(String value) {
+		return tlv(TAG_UTF8_STRING, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// x.509 requires UTCTime through 2049 and GeneralizedTime from 2050
+	public static byte[] time(Instant value) {
+		var year = value.atOffset(ZoneOffset.UTC).getYear();
+		if (year < 2050)
+			return tlv(TAG_UTC_TIME, UTC_TIME_FORMATTER.format(value).getBytes(StandardCharsets.US_ASCII));
+		return tlv(TAG_GENERALIZED_TIME, GENERALIZED_TIME_FORMATTER.format(value).getBytes(StandardCharsets.US_ASCII));
+	}
+
+	// explicit tags wrap a complete element, implicit ones replace its tag
+	public static byte[] explicit(int number, byte[]... contents) {
+		return tlv(TAG_CONSTRUCTED_CONTEXT | number, contents);
+	}
+
+	public static byte[] implicit(int number, byte[] value) {
+		return tlv(TAG_CONTEXT | number, value);
+	}
+
+	public static byte[] nullValue() {
+		return new byte[] { TAG_NULL, 0 };
+	}
+
+	public static byte[] oid(String value) {
+		var arcs = Arrays.stream(value.split("\\.")).mapToLong(Long::parseLong).toArray();
+		var out = new ByteArrayOutputStream();
+		writeBase128(out, arcs[0] * 40 + arcs[1]);
+		for (int i = 2; i < arcs.length; i++)
+			writeBase128(out, arcs[i]);
+		return tlv(TAG_OID, out.toByteArray());
+	}
+
+	public static List<Element> parse(byte[] der) {
+		return parse(der, 0, der.length);
+	}
+
+	public static List<Element> parse(byte[] der, int offset, int length) {
+		var elements = new ArrayList<Element>();
+		var end = offset + length;
+		var index = offset;
+		while (index < end) {
+			var headerOffset = index;
+			var tag = der[index++] & 0xff;
+			var elementLength = der[index++] & 0xff;
+			if ((elementLength & 0x80) != 0) {
+				var lengthBytes = elementLength & 0x7f;
+				if (lengthBytes == 0 || lengthBytes > 4)
+					throw new IllegalArgumentException("unsupported der length encoding");
+				elementLength = 0;
+				for (int i = 0; i < lengthBytes; i++)
+					elementLength = (elementLength << 8) | (der[index++] & 0xff);
+			}
+			if (elementLength < 0 || index + elementLength > end)
+				throw new IllegalArgumentException("truncated der element");
+			elements.add(new Element(der, tag, headerOffset, index, elementLength));
+			index += elementLength;
+		}
+		return elements;
+	}
+
+	private static void writeBase128(ByteArrayOutputStream out, long value) {
+		var groups = new ArrayList<Integer>();
+		do {
+			groups.add((int) (value & 0x7f));
+			value >>>= 7;
+		} while (value > 0);
+		for (int i = groups.size() - 1; i >= 0; i--)
+			out.write(groups.get(i) | (i > 0 ? 0x80 : 0));
+	}
+
+	public static class Element {
+
+		private final byte[] der;
+		private final int tag;
+		private final int headerOffset;
+		private final int offset;
+		private final int length;
+
+		protected Element(byte[] der, int tag, int headerOffset, int offset, int length) {
+			this.der = der;
+			this.tag = tag;
+			this.headerOffset = headerOffset;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public int getTag() {
+			return tag;
+		}
+
+		public byte[] getContent() {
+			return Arrays.copyOfRange(der, offset, offset + length);
+		}
+
+		public byte[] getEncoded() {
+			return Arrays.copyOfRange(der, headerOffset, offset + length);
+		}
+
+		public List<Element> getChildren() {
+			return parse(der, offset, length);
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.lfp.pgbouncer_app.cert;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.lfp.joe.utils.Utils;
+
+import at.favre.lib.bytes.Bytes;
+
+/**
+ * self signed EC P-256 placeholder that lets pgbouncer start with client tls before a real certificate is available.
+ * the key and cert are kept together in one pem file so a crash can not leave a mismatched pair.
+ */
+public class DummyCertificate {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final String FILE_NAME = "dummy-cert.pem";
+	private static final String OID_ECDSA_WITH_SHA256 = "1.2.840.10045.4.3.2";
+	private static final String OID_COMMON_NAME = "2.5.4.3";
+	private static final String OID_SUBJECT_ALT_NAME = "2.5.29.17";
+	private static final int SAN_TYPE_DNS = 2;
+	private static final Duration VALIDITY = Duration.ofDays(365 * 25);
+	private static final Duration RENEW_BEFORE = Duration.ofDays(30);
+
+	protected DummyCertificate() {
+	}
+
+	/**
+	 * returns the cached key and cert pems from the directory, generating and persisting a new pair when missing or
+	 * close to expiry
+	 */
+	public static Entry<Bytes, Bytes> get(File directory) {
+		var file = new File(directory, FILE_NAME);
+		var cached = read(file);
+		if (cached != null)
+			return cached;
+		var dnsName = "dummy-" + Utils.Crypto.getSecureRandomString().toLowerCase() + ".com";
+		var generated = generate(dnsName, VALIDITY);
+		try {
+			write(file, generated);
+		} catch (IOException e) {
+			logger.warn("dummy certificate write failed. file:{}", file.getAbsolutePath(), e);
+		}
+		return generated;
+	}
+
+	public static Entry<Bytes, Bytes> generate(String dnsName, Duration validity) {
+		try {
+			var keyPairGenerator = KeyPairGenerator.getInstance("EC");
+			keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+			var keyPair = keyPairGenerator.generateKeyPair();
+			var serial = new byte[16];
+			new SecureRandom().nextBytes(serial);
+			var notBefore = Instant.now().minus(Duration.ofDays(1));
+			var name = Der.sequence(Der.set(Der.sequence(Der.oid(OID_COMMON_NAME), Der.utf8String(dnsName))));
+			var signatureAlgorithm = Der.sequence(Der.oid(OID_ECDSA_WITH_SHA256));
+			var subjectAltName = Der.sequence(Der.oid(OID_SUBJECT_ALT_NAME), Der.octetString(
+					Der.sequence(Der.implicit(SAN_TYPE_DNS, dnsName.getBytes(StandardCharsets.US_ASCII)))));
+			var tbsCertificate = Der.sequence(Der.explicit(0, Der.integer(2)), Der.integer(new BigInteger(1, serial)),
+					signatureAlgorithm, name,
+					Der.sequence(Der.time(notBefore), Der.time(notBefore.plus(validity))), name,
+					keyPair.getPublic().getEncoded(), Der.explicit(3, Der.sequence(subjectAltName)));
+			var signature = Signature.getInstance("SHA256withECDSA");
+			signature.initSign(keyPair.getPrivate());
+			signature.update(tbsCertificate);
+			var certificate = Der.sequence(tbsCertificate, signatureAlgorithm, Der.bitString(signature.sign()));
+			return Map.entry(pem("PRIVATE KEY", keyPair.getPrivate().getEncoded()), pem("CERTIFICATE", certificate));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Entry<Bytes, Bytes> read(File file) {
+		if (!file.exists())
+			return null;
+		Bytes value;
+		try {
+			value = Utils.Bits.from(file);
+		} catch (IOException e) {
+			logger.warn("dummy certificate read failed. file:{}", file.getAbsolutePath(), e);
+			return null;
+		}
+		var certificateData = CertificateData.parse(value, value);
+		var certificate = certificateData.getCertificate().orElse(null);
+		var privateKey = certificateData.getPrivateKey().orElse(null);
+		if (certificate == null || privateKey == null)
+			return null;
+		if (!"EC".equals(certificate.getPublicKey().getAlgorithm()) || !"EC".equals(privateKey.getAlgorithm()))
+			return null;
+		if (certificate.getNotAfter().before(Date.from(Instant.now().plus(RENEW_BEFORE))))
+			return null;
+		try {
+			return Map.entry(pem("PRIVATE KEY", privateKey.getEncoded()), pem("CERTIFICATE", certificate.getEncoded()));
+		} catch (GeneralSecurityException e) {
+			return null;
+		}
+	}
+
+	// temp files are created readable by the owner only, which the rename keeps
+	private static void write(File file, Entry<Bytes, Bytes> entry) throws IOException {
+		var directory = file.getAbsoluteFile().getParentFile();
+		directory.mkdirs();
+		var tempFile = Files.createTempFile(directory.toPath(), "." + file.getName() + ".", ".tmp");
+		try {
+			Files.write(tempFile, entry.getKey().append(entry.getValue()).array());
+			Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private static Bytes pem(String type, byte[] der) {
+		var encoder = Base64.getMimeEncoder(64, new byte[] { '\n' });
+		var value = String.format("-----BEGIN %s-----\n%s\n-----END %s-----\n", type, encoder.encodeToString(der),
+				type);
+		return Utils.Bits.from(value.getBytes(StandardCharsets.US_ASCII));
+	}
+
+}
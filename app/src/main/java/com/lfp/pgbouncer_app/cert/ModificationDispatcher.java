@@ -0,0 +1,97 @@
+package com.lfp.pgbouncer_app.cert;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.threadly.concurrent.wrapper.limiter.ExecutorLimiter;
+
+import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.threads.Threads;
+import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.cert.CertStoreService.ModificationEvent;
+import com.lfp.pgbouncer_app.cert.CertStoreService.ModificationEventListener;
+
+public class ModificationDispatcher extends Scrapable.Impl {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final int MAX_QUIET_WINDOWS = 10;
+
+	private final Map<ModificationEventListener, ListenerState> listenerStates = new ConcurrentHashMap<>();
+	private final long quietWindowMillis;
+
+	public ModificationDispatcher(Duration quietWindow) {
+		this.quietWindowMillis = Math.max(0, Objects.requireNonNull(quietWindow).toMillis());
+	}
+
+	public Scrapable addListener(ModificationEventListener listener) {
+		Objects.requireNonNull(listener);
+		listenerStates.computeIfAbsent(listener, ListenerState::new);
+		return Scrapable.create(() -> listenerStates.remove(listener));
+	}
+
+	public void post(ModificationEvent event) {
+		if (event == null || event.isEmpty() || this.isScrapped())
+			return;
+		for (var listenerState : listenerStates.values())
+			listenerState.post(event);
+	}
+
+	private class ListenerState {
+
+		private final ModificationEventListener listener;
+		private final ExecutorLimiter executor = new ExecutorLimiter(Threads.Pools.centralPool(), 1);
+		private ModificationEvent pending;
+		private long firstPostAt;
+		private long lastPostAt;
+
+		public ListenerState(ModificationEventListener listener) {
+			this.listener = listener;
+		}
+
+		public synchronized void post(ModificationEvent event) {
+			var now = System.currentTimeMillis();
+			lastPostAt = now;
+			if (pending != null) {
+				pending = pending.merge(event);
+				return;
+			}
+			pending = event;
+			firstPostAt = now;
+			schedule(quietWindowMillis);
+		}
+
+		private void schedule(long delayMillis) {
+			Threads.Pools.centralPool().schedule(this::settle, delayMillis);
+		}
+
+		private synchronized void settle() {
+			if (pending == null)
+				return;
+			var now = System.currentTimeMillis();
+			var quietRemaining = lastPostAt + quietWindowMillis - now;
+			var maxRemaining = firstPostAt + quietWindowMillis * MAX_QUIET_WINDOWS - now;
+			if (quietRemaining > 0 && maxRemaining > 0) {
+				schedule(Math.min(quietRemaining, maxRemaining));
+				return;
+			}
+			var event = pending;
+			pending = null;
+			if (event.isEmpty() || ModificationDispatcher.this.isScrapped()
+					|| listenerStates.get(listener) != this)
+				return;
+			executor.execute(() -> {
+				try {
+					listener.onModification(event);
+				} catch (Throwable t) {
+					if (!Utils.Exceptions.isCancelException(t))
+						logger.warn("modification listener error. listener:{}", listener, t);
+				}
+			});
+		}
+	}
+
+}
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -49,12 +51,20 @@ public class PGBouncerServiceImpl extends RetrofitHandler<PGBouncerService>
 	private static final Duration CERTIFICATE_CHAIN_CACHE_REFRESH_DURATION = Duration.ofSeconds(1);
 
 	private final Scrapable _delegateScrapable = Scrapable.create();
+	private final CertStoreService certStoreService;
 	private final LoadingCache<Nada, CertificateInfo> certificateInfoCache;
+	private final AtomicLong certificateInfoVersion = new AtomicLong(-1);
 
 	public PGBouncerServiceImpl() {
+		this(CertStoreService.get());
+	}
+
+	public PGBouncerServiceImpl(CertStoreService certStoreService) {
 		super(PGBouncerService.class);
+		this.certStoreService = Objects.requireNonNull(certStoreService);
 		var pingHandler = new PingHandler();
 		pingHandler.accept(this);
+		// refreshed in the background while the stale chain is served, a new snapshot version refreshes at once
 		this.certificateInfoCache = Caffeine.newBuilder().maximumSize(1).executor(CoreTasks.executor())
 				.refreshAfterWrite(CERTIFICATE_CHAIN_CACHE_REFRESH_DURATION)
 				.build(new CacheLoader<Nada, CertificateInfo>() {
@@ -72,7 +82,7 @@ public class PGBouncerServiceImpl extends RetrofitHandler<PGBouncerService>
 		this.addExactPath(CERTIFICATE_CHAIN_PEM_PATH, this::handleCertificateChainPem);
 		Runnable pollTask = () -> {
 			try {
-				certificateInfoCache.get(Nada.get());
+				certificateInfo();
 			} catch (Throwable t) {
 				if (!Utils.Exceptions.isCancelException(t))
 					logger.warn("error during certificateInfoCache poll", t);
@@ -86,6 +96,10 @@ public class PGBouncerServiceImpl extends RetrofitHandler<PGBouncerService>
 
 	@Override
 	public CertificateInfo certificateInfo() {
+		var version = certStoreService.getSnapshot().getVersion();
+		var previousVersion = certificateInfoVersion.getAndSet(version);
+		if (previousVersion >= 0 && previousVersion != version)
+			certificateInfoCache.refresh(Nada.get());
 		var certificateInfo = certificateInfoCache.get(Nada.get());
 		if (certificateInfo != null)
 			return certificateInfo;
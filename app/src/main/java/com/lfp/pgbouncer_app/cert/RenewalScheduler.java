@@ -0,0 +1,102 @@
+package com.lfp.pgbouncer_app.cert;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+public class RenewalScheduler {
+
+	// caddy renews once a third of the lifetime remains
+	private static final double RENEWAL_WINDOW_RATIO = 1d / 3;
+
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private final long renewalWindowMillis;
+	private final Map<CertGroup, RenewalEntry> renewalEntries = new HashMap<>();
+	private final PriorityQueue<RenewalEntry> renewalQueue = new PriorityQueue<>(
+			Comparator.comparingLong((RenewalEntry v) -> v.renewalAt));
+	private long backoffMillis;
+
+	public RenewalScheduler(Duration minInterval, Duration maxInterval, Duration renewalWindow) {
+		this.minIntervalMillis = Math.max(1, minInterval.toMillis());
+		this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxInterval.toMillis());
+		this.renewalWindowMillis = Math.max(0, renewalWindow.toMillis());
+		this.backoffMillis = this.minIntervalMillis;
+	}
+
+	public synchronized void update(Collection<? extends CertStore> certStores) {
+		var previous = new HashMap<>(renewalEntries);
+		renewalEntries.clear();
+		renewalQueue.clear();
+		for (var certStore : certStores) {
+			var group = certStore.toCertGroup();
+			var entry = previous.get(group);
+			if (entry == null || entry.certStore != certStore)
+				entry = parseRenewalEntry(certStore);
+			renewalEntries.put(group, entry);
+			if (entry.notAfter > 0)
+				renewalQueue.add(entry);
+		}
+	}
+
+	public long nextDelayMillis(boolean modified) {
+		return nextDelayMillis(modified, System.currentTimeMillis());
+	}
+
+	synchronized long nextDelayMillis(boolean modified, long now) {
+		if (modified)
+			backoffMillis = minIntervalMillis;
+		// an expired certificate, or one whose renewal window passed without a change, is no longer expected to change
+		while (!renewalQueue.isEmpty() && (renewalQueue.peek().notAfter <= now
+				|| renewalQueue.peek().renewalAt + renewalWindowMillis <= now))
+			renewalQueue.poll();
+		var renewalAt = renewalQueue.isEmpty() ? null : renewalQueue.peek().renewalAt;
+		if (renewalAt != null && renewalAt - renewalWindowMillis <= now) {
+			backoffMillis = minIntervalMillis;
+			return minIntervalMillis;
+		}
+		var delay = backoffMillis;
+		backoffMillis = Math.min(maxIntervalMillis, backoffMillis * 2);
+		if (renewalAt != null)
+			delay = Math.min(delay, renewalAt - renewalWindowMillis - now);
+		return Math.max(minIntervalMillis, delay);
+	}
+
+	synchronized void schedule(long notBefore, long notAfter) {
+		var entry = createRenewalEntry(null, notBefore, notAfter);
+		if (entry.notAfter > 0)
+			renewalQueue.add(entry);
+	}
+
+	private static RenewalEntry parseRenewalEntry(CertStore certStore) {
+		var certificateData = certStore.getCertificateData();
+		var notBefore = certificateData.getNotBefore().map(Date::getTime).orElse(-1l);
+		var notAfter = certificateData.getNotAfter().map(Date::getTime).orElse(-1l);
+		return createRenewalEntry(certStore, notBefore, notAfter);
+	}
+
+	private static RenewalEntry createRenewalEntry(CertStore certStore, long notBefore, long notAfter) {
+		if (notBefore < 0 || notAfter < 0)
+			return new RenewalEntry(certStore, -1, -1);
+		var renewalAt = notAfter - (long) ((notAfter - notBefore) * RENEWAL_WINDOW_RATIO);
+		return new RenewalEntry(certStore, renewalAt, notAfter);
+	}
+
+	private static class RenewalEntry {
+
+		private final CertStore certStore;
+		private final long renewalAt;
+		private final long notAfter;
+
+		public RenewalEntry(CertStore certStore, long renewalAt, long notAfter) {
+			this.certStore = certStore;
+			this.renewalAt = renewalAt;
+			this.notAfter = notAfter;
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.lfp.pgbouncer_app.config;
 
+import java.io.File;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Date;
@@ -7,9 +8,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.aeonbits.owner.Config;
+import org.redisson.config.ReadMode;
 
 import com.lfp.joe.core.properties.Configs;
 import com.lfp.joe.core.properties.code.PrintOptions;
+import com.lfp.joe.core.properties.converter.FileConverter;
 import com.lfp.joe.core.properties.converter.MultimapConverter;
 import com.lfp.joe.core.properties.converter.URIConverter;
 import com.lfp.joe.properties.converter.DateConverter;
@@ -20,6 +23,15 @@ public interface PGBouncerAppConfig extends Config {
 	@ConverterClass(URIConverter.class)
 	URI storageRedisURI();
 
+	@ConverterClass(URIConverter.class)
+	List<URI> storageRedisURIs();
+
+	@DefaultValue("SINGLE")
+	StorageRedisTopology storageRedisTopology();
+
+	@DefaultValue("MASTER")
+	ReadMode storageRedisReadMode();
+
 	String storageKeyPrefix();
 
 	@ConverterClass(DateConverter.class)
@@ -33,6 +45,22 @@ public interface PGBouncerAppConfig extends Config {
 	@ConverterClass(DurationConverter.class)
 	Duration storageTimeout();
 
+	@DefaultValue("250")
+	int storageScanPageSize();
+
+	@DefaultValue("true")
+	boolean storageDigestSyncEnabled();
+
+	@DefaultValue("1024")
+	long storageDecryptCacheMaximumSize();
+
+	@DefaultValue("false")
+	boolean storageKeyspaceNotificationsEnabled();
+
+	@DefaultValue("300s")
+	@ConverterClass(DurationConverter.class)
+	Duration storageKeyspaceNotificationsPollInterval();
+
 	@DefaultValue("false")
 	boolean dynamicDnsEnabled();
 
@@ -69,8 +97,77 @@ public interface PGBouncerAppConfig extends Config {
 
 	@DefaultValue("false")
 	boolean logCertificateSummaries();
-	
-	
+
+	@DefaultValue("/data/pgbouncer")
+	@ConverterClass(FileConverter.class)
+	File dataDirectory();
+
+	@DefaultValue("true")
+	boolean certificateSnapshotEnabled();
+
+	@DefaultValue("2s")
+	@ConverterClass(DurationConverter.class)
+	Duration certificateModificationQuietWindow();
+
+	@DefaultValue("5s")
+	@ConverterClass(DurationConverter.class)
+	Duration certificateRefreshMinInterval();
+
+	@DefaultValue("600s")
+	@ConverterClass(DurationConverter.class)
+	Duration certificateRefreshMaxInterval();
+
+	@DefaultValue("900s")
+	@ConverterClass(DurationConverter.class)
+	Duration certificateRenewalWindow();
+
+	@DefaultValue("false")
+	boolean certificateLeaderElectionEnabled();
+
+	@DefaultValue("300s")
+	@ConverterClass(DurationConverter.class)
+	Duration certificateFollowerRefreshInterval();
+
+	@DefaultValue("false")
+	boolean metricsEnabled();
+
+	@DefaultValue("9127")
+	int metricsPort();
+
+	@DefaultValue("5s")
+	@ConverterClass(DurationConverter.class)
+	Duration metricsSampleInterval();
+
+	@DefaultValue("1s")
+	@ConverterClass(DurationConverter.class)
+	Duration processRestartMinBackoff();
+
+	@DefaultValue("60s")
+	@ConverterClass(DurationConverter.class)
+	Duration processRestartMaxBackoff();
+
+	@DefaultValue("120s")
+	@ConverterClass(DurationConverter.class)
+	Duration processRestartResetAfter();
+
+	// zero keeps restarting indefinitely
+	@DefaultValue("0")
+	int processRestartMaxAttempts();
+
+	@DefaultValue("true")
+	boolean processOutputParsingEnabled();
+
+	// bytes buffered per child process before output is dropped
+	@DefaultValue("1048576")
+	int processOutputBufferSize();
+
+	// one in this many routine connection lines is logged
+	@DefaultValue("100")
+	int processLogSampleRate();
+
+	// lines per second per process, the rest are counted as suppressed
+	@DefaultValue("50")
+	int processLogRateLimit();
 
 	public static void main(String[] args) {
 		Configs.printProperties(PrintOptions.propertiesBuilder().withSkipPopulated(true).build());
@@ -43,10 +43,97 @@ public interface PGBouncerExecConfig extends Config {
 	@DefaultValue("/opt/bitnami/scripts/pgbouncer/run.sh")
 	List<String> pgBouncerArgumentsDefault();
 
+	// more than one instance runs pgbouncer processes side by side on the same port with so_reuseport
+	@DefaultValue("1")
+	int pgBouncerInstances();
+
+	@DefaultValue("/opt/bitnami/scripts/pgbouncer/setup.sh")
+	List<String> pgBouncerSetupArguments();
+
+	@DefaultValue("/opt/bitnami/pgbouncer/bin/pgbouncer")
+	@ConverterClass(FileConverter.class)
+	File pgBouncerBinary();
+
+	@DefaultValue("pgbouncer")
+	String pgBouncerDaemonUser();
+
+	@DefaultValue("${confDirectory}/instances")
+	@ConverterClass(FileConverter.class)
+	File instancesDirectory();
+
+	// replacement processes bind next to the running ones through so_reuseport before those drain and exit
+	@DefaultValue("false")
+	boolean onlineRestartEnabled();
+
+	@DefaultValue("300 seconds")
+	@ConverterClass(DurationConverter.class)
+	Duration onlineRestartDrainTimeout();
+
+	// zero disables restarting when the pgbouncer binary changes
+	@DefaultValue("30 seconds")
+	@ConverterClass(DurationConverter.class)
+	Duration onlineRestartBinaryPollInterval();
+
 	@DefaultValue("/opt/bitnami/postgresql/bin/psql")
 	@ConverterClass(FileConverter.class)
 	File psqlExec();
 
+	// the image creates its admin user from this variable
+	@Key("POSTGRESQL_USERNAME")
+	@DefaultValue("postgres")
+	String postgresqlUsername();
+
+	@DefaultValue("${POSTGRESQL_USERNAME}")
+	String adminConsoleUser();
+
+	@DefaultValue("true")
+	boolean adminConsoleClientEnabled();
+
+	@DefaultValue("5 seconds")
+	@ConverterClass(DurationConverter.class)
+	Duration adminConsoleTimeout();
+
+	@DefaultValue("false")
+	boolean poolControllerEnabled();
+
+	@DefaultValue("10 seconds")
+	@ConverterClass(DurationConverter.class)
+	Duration poolControllerInterval();
+
+	@DefaultValue("30 seconds")
+	@ConverterClass(DurationConverter.class)
+	Duration poolControllerCooldown();
+
+	// zero uses the configured default_pool_size
+	@DefaultValue("0")
+	int poolSizeMin();
+
+	@DefaultValue("100")
+	int poolSizeMax();
+
+	@DefaultValue("5")
+	int poolSizeStep();
+
+	@DefaultValue("0.25")
+	double poolReserveRatio();
+
+	// zero leaves the sum of database pool sizes unbounded
+	@DefaultValue("0")
+	int poolServerConnectionBudget();
+
+	@DefaultValue("1 seconds")
+	@ConverterClass(DurationConverter.class)
+	Duration poolGrowWaitThreshold();
+
+	@DefaultValue("2")
+	int poolGrowSamples();
+
+	@DefaultValue("0.5")
+	double poolShrinkUtilization();
+
+	@DefaultValue("6")
+	int poolShrinkSamples();
+
 	public static void main(String[] args) {
 		Configs.printProperties(PrintOptions.properties());
 		Configs.printProperties(PrintOptions.json());
@@ -0,0 +1,5 @@
+package com.lfp.pgbouncer_app.config;
+
+public enum StorageRedisTopology {
+	SINGLE, MASTER_REPLICA, CLUSTER;
+}
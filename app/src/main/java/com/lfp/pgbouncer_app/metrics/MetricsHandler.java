@@ -0,0 +1,37 @@
+package com.lfp.pgbouncer_app.metrics;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+
+public class MetricsHandler implements HttpHandler {
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final ThreadLocal<PrometheusWriter> WRITER_POOL = ThreadLocal.withInitial(PrometheusWriter::new);
+	private final MetricsService metricsService;
+
+	public MetricsHandler(MetricsService metricsService) {
+		this.metricsService = Objects.requireNonNull(metricsService);
+	}
+
+	@Override
+	public void handleRequest(HttpServerExchange exchange) throws Exception {
+		if (!Methods.GET.equals(exchange.getRequestMethod()) && !Methods.HEAD.equals(exchange.getRequestMethod())) {
+			exchange.setStatusCode(StatusCodes.METHOD_NOT_ALLOWED);
+			exchange.endExchange();
+			return;
+		}
+		var writer = WRITER_POOL.get().reset();
+		metricsService.write(writer);
+		exchange.setStatusCode(StatusCodes.OK);
+		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE);
+		exchange.getResponseSender().send(StandardCharsets.UTF_8.encode(CharBuffer.wrap(writer.getBuffer())));
+	}
+
+}
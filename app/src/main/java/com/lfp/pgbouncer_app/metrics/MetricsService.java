@@ -0,0 +1,67 @@
+package com.lfp.pgbouncer_app.metrics;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+import com.lfp.joe.core.classpath.Instances;
+import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.metrics.PrometheusWriter.Type;
+
+public class MetricsService {
+
+	public static MetricsService get() {
+		return Instances.get(MetricsService.class, MetricsService::new);
+	}
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+
+	private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+	protected MetricsService() {
+	}
+
+	public Scrapable register(Collector collector) {
+		Objects.requireNonNull(collector);
+		collectors.add(collector);
+		return Scrapable.create(() -> collectors.remove(collector));
+	}
+
+	public Scrapable gauge(String name, String help, DoubleSupplier supplier) {
+		return register(name, help, Type.GAUGE, supplier);
+	}
+
+	public Scrapable counter(String name, String help, DoubleSupplier supplier) {
+		return register(name, help, Type.COUNTER, supplier);
+	}
+
+	public void write(PrometheusWriter writer) {
+		for (var collector : collectors) {
+			try {
+				collector.collect(writer);
+			} catch (Throwable t) {
+				if (!Utils.Exceptions.isCancelException(t))
+					logger.warn("metrics collector error. collector:{}", collector, t);
+			}
+		}
+	}
+
+	private Scrapable register(String name, String help, Type type, DoubleSupplier supplier) {
+		Objects.requireNonNull(supplier);
+		return register(writer -> {
+			writer.family(name, help, type);
+			writer.sample(name, supplier.getAsDouble());
+		});
+	}
+
+	@FunctionalInterface
+	public static interface Collector {
+
+		void collect(PrometheusWriter writer);
+	}
+
+}
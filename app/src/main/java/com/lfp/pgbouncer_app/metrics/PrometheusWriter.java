@@ -0,0 +1,98 @@
+package com.lfp.pgbouncer_app.metrics;
+
+/**
+ * prometheus text exposition writer that appends into a reusable buffer
+ */
+public class PrometheusWriter {
+
+	public static enum Type {
+		COUNTER("counter"), GAUGE("gauge");
+
+		private final String value;
+
+		private Type(String value) {
+			this.value = value;
+		}
+	}
+
+	private static final String[] NO_LABELS = new String[0];
+	private final StringBuilder buffer;
+
+	public PrometheusWriter() {
+		this(8192);
+	}
+
+	public PrometheusWriter(int capacity) {
+		this.buffer = new StringBuilder(capacity);
+	}
+
+	public PrometheusWriter reset() {
+		buffer.setLength(0);
+		return this;
+	}
+
+	public CharSequence getBuffer() {
+		return buffer;
+	}
+
+	public PrometheusWriter family(String name, String help, Type type) {
+		if (help != null) {
+			buffer.append("# HELP ").append(name).append(' ');
+			appendEscaped(help, false);
+			buffer.append('\n');
+		}
+		buffer.append("# TYPE ").append(name).append(' ').append(type.value).append('\n');
+		return this;
+	}
+
+	public PrometheusWriter sample(String name, double value) {
+		return sample(name, NO_LABELS, NO_LABELS, value);
+	}
+
+	public PrometheusWriter sample(String name, String[] labelNames, String[] labelValues, double value) {
+		buffer.append(name);
+		if (labelNames.length > 0) {
+			buffer.append('{');
+			for (int i = 0; i < labelNames.length; i++) {
+				if (i > 0)
+					buffer.append(',');
+				buffer.append(labelNames[i]).append("=\"");
+				appendEscaped(i < labelValues.length ? labelValues[i] : null, true);
+				buffer.append('"');
+			}
+			buffer.append('}');
+		}
+		buffer.append(' ');
+		appendValue(value);
+		buffer.append('\n');
+		return this;
+	}
+
+	private void appendValue(double value) {
+		if (Double.isNaN(value))
+			buffer.append("NaN");
+		else if (Double.isInfinite(value))
+			buffer.append(value > 0 ? "+Inf" : "-Inf");
+		else if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			buffer.append((long) value);
+		else
+			buffer.append(value);
+	}
+
+	private void appendEscaped(String value, boolean label) {
+		if (value == null)
+			return;
+		for (int i = 0; i < value.length(); i++) {
+			var c = value.charAt(i);
+			if (c == '\\')
+				buffer.append("\\\\");
+			else if (c == '\n')
+				buffer.append("\\n");
+			else if (label && c == '"')
+				buffer.append("\\\"");
+			else
+				buffer.append(c);
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import com.lfp.joe.utils.Utils;
+
+import at.favre.lib.bytes.Bytes;
+import one.util.streamex.StreamEx;
+
+/**
+ * installs the client tls key and cert read by pgbouncer. digests of the installed pair are kept in memory, so an
+ * unchanged pair costs no file io. both files are staged next to their targets before either is renamed into place,
+ * which keeps a failed write from leaving a mismatched pair behind. staged files are handed to the daemon user
+ * before the rename, since pgbouncer drops privileges before it reads them.
+ */
+public class ClientTLSInstaller {
+
+	public static final Set<PosixFilePermission> KEY_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+	public static final Set<PosixFilePermission> CERT_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+	private final File keyFile;
+	private final File certFile;
+	private final String owner;
+	private Bytes keyHash;
+	private Bytes certHash;
+	private Bytes certValue;
+	private Bytes previousCertValue;
+
+	/**
+	 * a null owner leaves the files owned by the current user
+	 */
+	public ClientTLSInstaller(File keyFile, File certFile, String owner) {
+		this.keyFile = Objects.requireNonNull(keyFile);
+		this.certFile = Objects.requireNonNull(certFile);
+		this.owner = Utils.Strings.trimToNull(owner);
+	}
+
+	/**
+	 * the installed cert and the one it replaced, which pgbouncer keeps serving until it reloads
+	 */
+	public synchronized List<Bytes> getPinnedCertValues() {
+		return StreamEx.of(certValue, previousCertValue).nonNull().remove(Bytes::isEmpty).distinct().toList();
+	}
+
+	/**
+	 * returns true if either file changed and pgbouncer should reload
+	 */
+	public synchronized boolean install(Bytes keyValue, Bytes certValue) throws IOException {
+		var keyHash = hash(keyValue);
+		var certHash = hash(certValue);
+		if (this.keyHash == null) {
+			// first call, seed from whatever a previous run left on disk
+			this.keyHash = hash(read(keyFile));
+			this.certValue = read(certFile);
+			this.certHash = hash(this.certValue);
+		}
+		var keyChanged = !Objects.equals(this.keyHash, keyHash);
+		var certChanged = !Objects.equals(this.certHash, certHash);
+		if (!keyChanged && !certChanged)
+			return false;
+		Path keyStage = null;
+		Path certStage = null;
+		try {
+			if (keyChanged)
+				keyStage = stage(keyValue, keyFile, KEY_PERMISSIONS);
+			if (certChanged)
+				certStage = stage(certValue, certFile, CERT_PERMISSIONS);
+			// forget the digests until both renames land, the next call then re-reads the disk
+			this.keyHash = null;
+			this.certHash = null;
+			if (certChanged && this.certValue != null && !this.certValue.isEmpty())
+				this.previousCertValue = this.certValue;
+			this.certValue = null;
+			if (keyChanged)
+				commit(keyStage, keyFile);
+			if (certChanged)
+				commit(certStage, certFile);
+			this.keyHash = keyHash;
+			this.certHash = certHash;
+			this.certValue = certValue == null ? Utils.Bits.empty() : certValue;
+		} finally {
+			if (keyStage != null)
+				Files.deleteIfExists(keyStage);
+			if (certStage != null)
+				Files.deleteIfExists(certStage);
+		}
+		return true;
+	}
+
+	// null stages a delete
+	private Path stage(Bytes content, File file, Set<PosixFilePermission> permissions) throws IOException {
+		if (content == null || content.isEmpty())
+			return null;
+		var directory = file.getAbsoluteFile().getParentFile();
+		directory.mkdirs();
+		var stage = Files.createTempFile(directory.toPath(), "." + file.getName() + ".", ".tmp");
+		try {
+			Files.write(stage, content.array());
+			if (isPosix())
+				Files.setPosixFilePermissions(stage, permissions);
+			if (owner != null) {
+				UserPrincipal principal = stage.getFileSystem().getUserPrincipalLookupService()
+						.lookupPrincipalByName(owner);
+				if (!principal.equals(Files.getOwner(stage)))
+					Files.setOwner(stage, principal);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(stage);
+			throw e;
+		}
+		return stage;
+	}
+
+	private static void commit(Path stage, File file) throws IOException {
+		if (stage == null)
+			Files.deleteIfExists(file.toPath());
+		else
+			Files.move(stage, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static boolean isPosix() {
+		return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+	}
+
+	private static Bytes read(File file) throws IOException {
+		if (!file.exists())
+			return Utils.Bits.empty();
+		return Utils.Bits.from(file);
+	}
+
+	private static Bytes hash(Bytes content) throws IOException {
+		if (content == null || content.isEmpty())
+			return Utils.Bits.empty();
+		try (InputStream is = content.inputStream()) {
+			return Utils.Crypto.hashMD5(is);
+		}
+	}
+
+}
@@ -0,0 +1,476 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.cert.CertificateData;
+
+import at.favre.lib.bytes.Bytes;
+
+/**
+ * minimal simple-query client for the pgbouncer admin console. the admin secret is sent as a cleartext password, so
+ * connections require tls and the server must present one of the certificates this process installed.
+ */
+public class PGBouncerAdminClient extends Scrapable.Impl {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final String ADMIN_DATABASE = "pgbouncer";
+	private static final int PROTOCOL_VERSION = 196608;
+	private static final int SSL_REQUEST_CODE = 80877103;
+	private static final int AUTH_OK = 0;
+	private static final int AUTH_CLEARTEXT = 3;
+	private static final int AUTH_MD5 = 5;
+	private static final int PEER_CONNECT_ATTEMPTS_PER_INSTANCE = 16;
+
+	private final InetSocketAddress address;
+	private final String user;
+	private final String password;
+	private final Duration timeout;
+	private final int peerId;
+	private final int instances;
+	private final Supplier<? extends Collection<Bytes>> pinnedCertValues;
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	public PGBouncerAdminClient(InetSocketAddress address, String user, String password, Duration timeout,
+			Supplier<? extends Collection<Bytes>> pinnedCertValues) {
+		this(address, user, password, timeout, pinnedCertValues, 0, 1);
+	}
+
+	/**
+	 * pins the client to the instance with the given peer_id when several processes share the port through
+	 * so_reuseport. the kernel spreads connections by source port, so connections are retried until one lands on the
+	 * requested peer. pinnedCertValues supplies the cert pems the server may present.
+	 */
+	public PGBouncerAdminClient(InetSocketAddress address, String user, String password, Duration timeout,
+			Supplier<? extends Collection<Bytes>> pinnedCertValues, int peerId, int instances) {
+		this.address = Objects.requireNonNull(address);
+		this.user = Objects.requireNonNull(user);
+		this.password = Objects.requireNonNull(password);
+		this.timeout = Objects.requireNonNull(timeout);
+		this.pinnedCertValues = Objects.requireNonNull(pinnedCertValues);
+		this.peerId = peerId;
+		this.instances = Math.max(1, instances);
+		this.onScrap(this::close);
+	}
+
+	public int getPeerId() {
+		return peerId;
+	}
+
+	public synchronized QueryResult query(String sql) throws IOException {
+		Objects.requireNonNull(sql);
+		if (this.isScrapped())
+			throw new IOException("client closed");
+		var reconnect = socket != null;
+		try {
+			return queryInternal(sql);
+		} catch (QueryException e) {
+			throw e;
+		} catch (IOException e) {
+			close();
+			if (!reconnect)
+				throw e;
+			// the persistent connection may have gone stale across a pgbouncer restart
+			return queryInternal(sql);
+		}
+	}
+
+	public String execute(String sql) throws IOException {
+		return query(sql).getCommandTag();
+	}
+
+	public List<Map<String, String>> show(String name) throws IOException {
+		return query("SHOW " + name).toMaps();
+	}
+
+	public synchronized void close() {
+		var socket = this.socket;
+		this.socket = null;
+		this.in = null;
+		this.out = null;
+		if (socket == null)
+			return;
+		try {
+			if (!socket.isClosed()) {
+				var terminate = new DataOutputStream(socket.getOutputStream());
+				terminate.writeByte('X');
+				terminate.writeInt(4);
+				terminate.flush();
+			}
+		} catch (IOException e) {
+			// suppress
+		}
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// suppress
+		}
+	}
+
+	private QueryResult queryInternal(String sql) throws IOException {
+		if (socket == null)
+			connectPeer();
+		var body = new ByteArrayOutputStream();
+		writeCString(body, sql);
+		writeMessage('Q', body.toByteArray());
+		String commandTag = null;
+		List<String> columns = List.of();
+		var rows = new ArrayList<List<String>>();
+		QueryException error = null;
+		while (true) {
+			var type = (char) in.readUnsignedByte();
+			var payload = readPayload();
+			switch (type) {
+			case 'T':
+				columns = parseRowDescription(payload);
+				break;
+			case 'D':
+				rows.add(parseDataRow(payload));
+				break;
+			case 'C':
+				commandTag = readCString(payload, 0);
+				break;
+			case 'E':
+				error = new QueryException(parseError(payload));
+				break;
+			case 'Z':
+				if (error != null)
+					throw error;
+				return new QueryResult(commandTag, columns, rows);
+			default:
+				// notices, empty query responses and parameter updates are ignored
+				break;
+			}
+		}
+	}
+
+	private void connectPeer() throws IOException {
+		connect();
+		if (peerId <= 0)
+			return;
+		var attempts = instances * PEER_CONNECT_ATTEMPTS_PER_INSTANCE;
+		for (int i = 0;; i++) {
+			var currentPeerId = queryInternal("SHOW CONFIG").toMaps().stream()
+					.filter(v -> "peer_id".equals(v.get("key"))).map(v -> v.get("value")).findFirst().orElse(null);
+			if (Objects.toString(peerId).equals(currentPeerId))
+				return;
+			close();
+			if (i + 1 >= attempts)
+				throw new IOException(String.format("unable to reach peer_id:%s after %s attempts", peerId, attempts));
+			connect();
+		}
+	}
+
+	private void connect() throws IOException {
+		try {
+			this.socket = open();
+			this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+			startup();
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * opens the tls connection that startup runs over
+	 */
+	protected Socket open() throws IOException {
+		var plainSocket = new Socket();
+		try {
+			plainSocket.setTcpNoDelay(true);
+			plainSocket.setSoTimeout((int) timeout.toMillis());
+			plainSocket.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+					(int) timeout.toMillis());
+			var plainOut = new DataOutputStream(plainSocket.getOutputStream());
+			plainOut.writeInt(8);
+			plainOut.writeInt(SSL_REQUEST_CODE);
+			plainOut.flush();
+			var response = plainSocket.getInputStream().read();
+			// never fall back to plaintext, the password would cross the network in the clear
+			if (response != 'S')
+				throw new IOException("server refused tls. response:" + response);
+			return upgrade(plainSocket, new PinnedTrustManager(pinnedCertValues.get()));
+		} catch (IOException | RuntimeException e) {
+			try {
+				plainSocket.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
+
+	private void startup() throws IOException {
+		var body = new ByteArrayOutputStream();
+		writeInt(body, PROTOCOL_VERSION);
+		writeCString(body, "user");
+		writeCString(body, user);
+		writeCString(body, "database");
+		writeCString(body, ADMIN_DATABASE);
+		body.write(0);
+		var payload = body.toByteArray();
+		out.writeInt(payload.length + 4);
+		out.write(payload);
+		out.flush();
+		while (true) {
+			var type = (char) in.readUnsignedByte();
+			var message = readPayload();
+			switch (type) {
+			case 'R':
+				authenticate(message);
+				break;
+			case 'E':
+				throw new QueryException(parseError(message));
+			case 'Z':
+				logger.debug("admin console connected:{}", address);
+				return;
+			default:
+				break;
+			}
+		}
+	}
+
+	private void authenticate(byte[] message) throws IOException {
+		var code = readInt(message, 0);
+		if (code == AUTH_OK)
+			return;
+		String response;
+		if (code == AUTH_CLEARTEXT)
+			response = password;
+		else if (code == AUTH_MD5) {
+			var salt = new byte[] { message[4], message[5], message[6], message[7] };
+			var inner = md5Hex(password.getBytes(StandardCharsets.UTF_8), user.getBytes(StandardCharsets.UTF_8));
+			response = "md5" + md5Hex(inner.getBytes(StandardCharsets.US_ASCII), salt);
+		} else
+			throw new IOException("unsupported authentication request:" + code);
+		var body = new ByteArrayOutputStream();
+		writeCString(body, response);
+		writeMessage('p', body.toByteArray());
+	}
+
+	private void writeMessage(char type, byte[] body) throws IOException {
+		out.writeByte(type);
+		out.writeInt(body.length + 4);
+		out.write(body);
+		out.flush();
+	}
+
+	private byte[] readPayload() throws IOException {
+		var length = in.readInt() - 4;
+		if (length < 0)
+			throw new IOException("invalid message length:" + length);
+		var payload = new byte[length];
+		in.readFully(payload);
+		return payload;
+	}
+
+	private static List<String> parseRowDescription(byte[] payload) {
+		var count = readShort(payload, 0);
+		var columns = new ArrayList<String>(count);
+		var offset = 2;
+		for (int i = 0; i < count; i++) {
+			var name = readCString(payload, offset);
+			columns.add(name);
+			// name terminator plus table oid, column, type oid, type size, type modifier and format
+			offset += name.getBytes(StandardCharsets.UTF_8).length + 1 + 18;
+		}
+		return columns;
+	}
+
+	private static List<String> parseDataRow(byte[] payload) {
+		var count = readShort(payload, 0);
+		var values = new ArrayList<String>(count);
+		var offset = 2;
+		for (int i = 0; i < count; i++) {
+			var length = readInt(payload, offset);
+			offset += 4;
+			if (length < 0) {
+				values.add(null);
+				continue;
+			}
+			values.add(new String(payload, offset, length, StandardCharsets.UTF_8));
+			offset += length;
+		}
+		return values;
+	}
+
+	private static String parseError(byte[] payload) {
+		var fields = new LinkedHashMap<Character, String>();
+		var offset = 0;
+		while (offset < payload.length && payload[offset] != 0) {
+			var field = (char) payload[offset++];
+			var value = readCString(payload, offset);
+			offset += value.getBytes(StandardCharsets.UTF_8).length + 1;
+			fields.put(field, value);
+		}
+		return String.format("%s %s", fields.getOrDefault('C', ""), fields.getOrDefault('M', "")).trim();
+	}
+
+	private static Socket upgrade(Socket socket, X509TrustManager trustManager) throws IOException {
+		try {
+			var sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, new TrustManager[] { trustManager }, new SecureRandom());
+			var sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket,
+					socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+			sslSocket.setUseClientMode(true);
+			sslSocket.startHandshake();
+			return sslSocket;
+		} catch (GeneralSecurityException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static String md5Hex(byte[]... values) {
+		try {
+			var digest = MessageDigest.getInstance("MD5");
+			for (var value : values)
+				digest.update(value);
+			return Utils.Bits.from(digest.digest()).encodeHex();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static void writeCString(ByteArrayOutputStream out, String value) {
+		var bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.write(bytes, 0, bytes.length);
+		out.write(0);
+	}
+
+	private static int readInt(byte[] payload, int offset) {
+		return ((payload[offset] & 0xff) << 24) | ((payload[offset + 1] & 0xff) << 16)
+				| ((payload[offset + 2] & 0xff) << 8) | (payload[offset + 3] & 0xff);
+	}
+
+	private static int readShort(byte[] payload, int offset) {
+		return ((payload[offset] & 0xff) << 8) | (payload[offset + 1] & 0xff);
+	}
+
+	private static String readCString(byte[] payload, int offset) {
+		var end = offset;
+		while (end < payload.length && payload[end] != 0)
+			end++;
+		return new String(payload, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	public static class QueryResult {
+
+		private final String commandTag;
+		private final List<String> columns;
+		private final List<List<String>> rows;
+
+		public QueryResult(String commandTag, List<String> columns, List<List<String>> rows) {
+			this.commandTag = commandTag;
+			this.columns = Collections.unmodifiableList(columns);
+			this.rows = Collections.unmodifiableList(rows);
+		}
+
+		public String getCommandTag() {
+			return commandTag;
+		}
+
+		public List<String> getColumns() {
+			return columns;
+		}
+
+		public List<List<String>> getRows() {
+			return rows;
+		}
+
+		public List<Map<String, String>> toMaps() {
+			var maps = new ArrayList<Map<String, String>>(rows.size());
+			for (var row : rows) {
+				var map = new LinkedHashMap<String, String>();
+				for (int i = 0; i < columns.size() && i < row.size(); i++)
+					map.put(columns.get(i), row.get(i));
+				maps.add(map);
+			}
+			return maps;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	public static class QueryException extends IOException {
+
+		public QueryException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * trusts a server whose leaf certificate is byte for byte one of the pinned certificates
+	 */
+	static class PinnedTrustManager implements X509TrustManager {
+
+		private final List<X509Certificate> pinnedCertificates;
+
+		PinnedTrustManager(Collection<Bytes> pinnedCertValues) {
+			this.pinnedCertificates = Utils.Lots.stream(pinnedCertValues).nonNull()
+					.map(v -> CertificateData.parse(v, null).getCertificate().orElse(null)).nonNull().toList();
+		}
+
+		@Override
+		public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+			throw new CertificateException("client certificates are not accepted");
+		}
+
+		@Override
+		public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+			if (chain == null || chain.length == 0)
+				throw new CertificateException("server presented no certificate");
+			var encoded = chain[0].getEncoded();
+			for (var pinnedCertificate : pinnedCertificates)
+				if (MessageDigest.isEqual(encoded, pinnedCertificate.getEncoded()))
+					return;
+			throw new CertificateException("server certificate is not pinned. subject:"
+					+ chain[0].getSubjectX500Principal().getName());
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import com.lfp.joe.core.classpath.Instances;
+import com.lfp.joe.core.properties.Configs;
+import com.lfp.joe.utils.Utils;
+import com.lfp.joe.utils.function.Requires;
+import com.lfp.pgbouncer_app.config.PGBouncerExecConfig;
+
+public class PGBouncerAdminCredentials {
+
+	public static PGBouncerAdminCredentials get() {
+		return Instances.get(PGBouncerAdminCredentials.class, () -> {
+			var user = Configs.get(PGBouncerExecConfig.class).adminConsoleUser();
+			return new PGBouncerAdminCredentials(user, Utils.Crypto.getSecureRandomString());
+		});
+	}
+
+	private final String user;
+	private final String password;
+
+	public PGBouncerAdminCredentials(String user, String password) {
+		this.user = Requires.notBlank(user);
+		this.password = Requires.notBlank(password);
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public boolean matches(String user, String password) {
+		if (!this.user.equals(user) || password == null)
+			return false;
+		return MessageDigest.isEqual(this.password.getBytes(StandardCharsets.UTF_8),
+				password.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
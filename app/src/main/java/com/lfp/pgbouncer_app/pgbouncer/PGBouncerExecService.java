@@ -1,24 +1,31 @@
 package com.lfp.pgbouncer_app.pgbouncer;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.lfp.joe.certigo.impl.CertigoServiceImpl;
-import com.lfp.joe.certigo.service.CertificateInfo;
+import org.threadly.concurrent.future.FutureUtils;
+import org.threadly.concurrent.future.ListenableFuture;
+import org.threadly.concurrent.future.SettableListenableFuture;
+
+import com.lfp.joe.core.function.MemoizedSupplier;
 import com.lfp.joe.core.function.Muto;
+import com.lfp.joe.core.function.Nada;
 import com.lfp.joe.core.function.Scrapable;
 import com.lfp.joe.core.properties.Configs;
 import com.lfp.joe.net.http.ip.IPs;
@@ -30,10 +37,17 @@ import com.lfp.joe.threads.Threads;
 import com.lfp.joe.utils.Utils;
 import com.lfp.joe.utils.function.Requires;
 import com.lfp.pgbouncer_app.cert.CertStore;
+import com.lfp.pgbouncer_app.cert.CertificateData;
+import com.lfp.pgbouncer_app.cert.DummyCertificate;
 import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
 import com.lfp.pgbouncer_app.config.PGBouncerExecConfig;
+import com.lfp.pgbouncer_app.pgbouncer.PGBouncerAdminClient.QueryException;
+import com.lfp.pgbouncer_app.process.ProcessLogSink;
+import com.lfp.pgbouncer_app.process.ProcessOutputReader;
+import com.lfp.pgbouncer_app.process.ProcessSupervisor;
 
 import at.favre.lib.bytes.Bytes;
+import one.util.streamex.IntStreamEx;
 import one.util.streamex.StreamEx;
 
 public class PGBouncerExecService extends Scrapable.Impl {
@@ -47,14 +61,27 @@ public class PGBouncerExecService extends Scrapable.Impl {
 	private static final String ADMIN_UNIX_USER = "pgbouncer";
 	private static final String ENV_READ_FILE_POSTFIX = "_FILE";
 	private static final String PGBOUNCER_CLIENT_TLS_SSLMODE = "require";
-	private static final Entry<Bytes, Bytes> DUMMY_CERT_ENTRY = generateDummyCertEntry();
-	private final Muto<ProcessLFP> processMuto = Muto.create();
+	private static final MemoizedSupplier<Entry<Bytes, Bytes>> DUMMY_CERT_ENTRY = Utils.Functions
+			.memoize(() -> DummyCertificate.get(Configs.get(PGBouncerAppConfig.class).dataDirectory()));
+	private final Muto<List<ProcessLFP>> processMuto = Muto.create();
+	private final SettableListenableFuture<Nada> terminationFuture = new SettableListenableFuture<>(false);
 	private final String[] args;
 	private final InetSocketAddress pgBouncerAddress;
+	private final ClientTLSInstaller clientTLSInstaller;
+	private final int instanceCount;
+	private final boolean managedLayout;
+	private final List<PGBouncerInstance> instances = new CopyOnWriteArrayList<>();
+	private final List<ProcessSupervisor> supervisors = new CopyOnWriteArrayList<>();
+	private final Set<ProcessLFP> drainingProcesses = ConcurrentHashMap.newKeySet();
+	private final ProcessLogSink logSink = new ProcessLogSink("pgbouncer");
+	private volatile Map<String, String> environmentVariables;
+	private volatile CertStore clientTLS;
 
 	public PGBouncerExecService(InetSocketAddress authenticatorAdress, String... args) throws IOException {
 		this.args = args;
 		Objects.requireNonNull(authenticatorAdress);
+		// loaded while pam and the instances are prepared, the placeholder is installed before the first launch
+		Threads.Pools.centralPool().execute(DUMMY_CERT_ENTRY::get);
 		{// prepare pam
 			var prepend = new ArrayList<String>();
 			prepend.add(String.format("auth sufficient %s url=http://%s:%s", PAM_MODULE_PATH,
@@ -72,13 +99,95 @@ public class PGBouncerExecService extends Scrapable.Impl {
 			}
 		}
 		this.pgBouncerAddress = InetSocketAddress.createUnresolved(IPs.getLocalIPAddress(), Sockets.allocatePort());
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		this.clientTLSInstaller = new ClientTLSInstaller(cfg.clientTlsKeyFile(), cfg.clientTlsCertFile(),
+				cfg.pgBouncerDaemonUser());
+		this.instanceCount = Math.max(1, cfg.pgBouncerInstances());
+		this.managedLayout = this.instanceCount > 1 || cfg.onlineRestartEnabled();
+		if (cfg.onlineRestartEnabled())
+			Requires.isTrue(cfg.adminConsoleClientEnabled(), "online restart requires the admin console client");
+		// peer ids start at 1, a single unmanaged instance runs without peering
+		for (int i = 0; i < this.instanceCount; i++)
+			this.instances.add(createInstance(this.managedLayout ? i + 1 : 0));
+		// one hook for whichever processes are current at scrap, restarts and replacements register nothing
+		this.onScrap(() -> {
+			instances.forEach(this::stopInstance);
+			drainingProcesses.forEach(v -> v.cancel(true));
+		});
+		this.onScrap(() -> terminationFuture.setResult(Nada.get()));
 	}
 
 	public void reload() throws IOException {
 		processMuto.updateAndGet(process -> {
 			logger.info("reload started");
-			String command = String.format("su -c \"echo RELOAD | %s -p %s %s\" %s",
-					Configs.get(PGBouncerExecConfig.class).psqlExec().getAbsolutePath(),
+			if (!reloadAdminConsole())
+				reloadPsql();
+			logger.info("reload complete");
+			return process;
+		}, Objects::nonNull);
+	}
+
+	public List<PGBouncerInstance> getInstances() {
+		return List.copyOf(instances);
+	}
+
+	public List<ProcessSupervisor> getSupervisors() {
+		return List.copyOf(supervisors);
+	}
+
+	public ProcessLogSink getLogSink() {
+		return logSink;
+	}
+
+	/**
+	 * completes when pgbouncer stops for good, either on scrap or once a supervisor runs out of restart attempts
+	 */
+	public ListenableFuture<Nada> getTerminationFuture() {
+		return terminationFuture;
+	}
+
+	public PGBouncerAdminClient getAdminClient() {
+		return instances.get(0).getAdminClient();
+	}
+
+	public List<PGBouncerAdminClient> getAdminClients() {
+		return StreamEx.of(instances).map(PGBouncerInstance::getAdminClient).nonNull().toList();
+	}
+
+	/**
+	 * the rendered base ini comes first. in the managed layout restarted instances derive their ini from it.
+	 */
+	public List<File> getConfIniFiles() {
+		var confIni = Configs.get(PGBouncerExecConfig.class).confIni();
+		if (!managedLayout)
+			return List.of(confIni);
+		return StreamEx.of(confIni).append(StreamEx.of(instances).map(PGBouncerInstance::getConfIni)).toList();
+	}
+
+	protected boolean reloadAdminConsole() {
+		var adminClients = getAdminClients();
+		if (adminClients.size() != instances.size())
+			return false;
+		try {
+			for (var adminClient : adminClients) {
+				var commandTag = adminClient.execute("RELOAD");
+				Requires.isTrue(Utils.Strings.equalsIgnoreCase(commandTag, "reload"), "reload failed:%s",
+						commandTag);
+			}
+			return true;
+		} catch (Throwable t) {
+			logger.warn("admin console reload failed, falling back to psql", t);
+			return false;
+		}
+	}
+
+	protected void reloadPsql() {
+		for (var instance : instances) {
+			// sibling instances share the tcp port, so each one is reached through its own unix socket
+			var hostArgument = !managedLayout ? ""
+					: String.format("-h %s ", instance.getUnixSocketDirectory().getAbsolutePath());
+			String command = String.format("su -c \"echo RELOAD | %s %s-p %s %s\" %s",
+					Configs.get(PGBouncerExecConfig.class).psqlExec().getAbsolutePath(), hostArgument,
 					this.pgBouncerAddress.getPort(), ADMIN_DATABASE_USER, ADMIN_UNIX_USER);
 			String output;
 			try {
@@ -91,44 +200,36 @@ public class PGBouncerExecService extends Scrapable.Impl {
 			}
 			output = Utils.Strings.trimToNull(output);
 			Requires.isTrue(Utils.Strings.equalsIgnoreCase(output, "reload"), "reload failed:%s", output);
-			logger.info("reload complete");
-			return process;
-		}, Objects::nonNull);
+		}
 	}
 
 	public boolean setClientTLS(CertStore certStore) throws IOException {
-		var cfg = Configs.get(PGBouncerExecConfig.class);
-		var keyFile = cfg.clientTlsKeyFile();
-		var certFile = cfg.clientTlsCertFile();
+		this.clientTLS = certStore;
 		boolean dummyCerts;
 		Bytes keyValue;
 		Bytes certValue;
 		if (certStore == null) {
-			keyValue = DUMMY_CERT_ENTRY.getKey();
-			certValue = DUMMY_CERT_ENTRY.getValue();
+			keyValue = DUMMY_CERT_ENTRY.get().getKey();
+			certValue = DUMMY_CERT_ENTRY.get().getValue();
 			dummyCerts = true;
 		} else {
 			keyValue = certStore.getKey().getValue();
 			certValue = certStore.getCert().getValue();
 			dummyCerts = false;
 		}
-		boolean mod = false;
-		if (writeToFile(keyValue, keyFile))
-			mod = true;
-		if (writeToFile(certValue, certFile))
-			mod = true;
+		var mod = clientTLSInstaller.install(keyValue, certValue);
 		if (mod) {
 			if (!dummyCerts)
-				logCertificateSummary(keyValue, certValue);
+				logCertificateSummary(certStore);
 			reload();
 		}
 		return mod;
 	}
 
-	public ProcessLFP start() {
+	public List<ProcessLFP> start() {
 		return processMuto.updateAndGet(nil -> {
 			try {
-				return createProcess();
+				return createProcesses();
 			} catch (IOException e) {
 				throw RuntimeException.class.isInstance(e) ? RuntimeException.class.cast(e) : new RuntimeException(e);
 			}
@@ -139,26 +240,43 @@ public class PGBouncerExecService extends Scrapable.Impl {
 		return pgBouncerAddress;
 	}
 
-	protected ProcessLFP createProcess() throws IOException {
+	protected List<ProcessLFP> createProcesses() throws IOException {
 		var cfg = Configs.get(PGBouncerExecConfig.class);
-		setClientTLS(null);
+		// keeps an installed certificate when processes are started again
+		setClientTLS(this.clientTLS);
 		// start process
-		var environmentVariables = new LinkedHashMap<>(Utils.Machine.getEnvironmentVariables(ENV_READ_FILE_POSTFIX));
+		var environmentVariables = new LinkedHashMap<String, String>(
+				Utils.Machine.getEnvironmentVariables(ENV_READ_FILE_POSTFIX));
 		environmentVariables.put("PGBOUNCER_AUTH_TYPE", "pam");
 		environmentVariables.put("PGBOUNCER_BIND_ADDRESS", this.pgBouncerAddress.getHostString());
 		environmentVariables.put("PGBOUNCER_PORT", Objects.toString(this.pgBouncerAddress.getPort()));
 		environmentVariables.put("PGBOUNCER_CLIENT_TLS_SSLMODE", PGBOUNCER_CLIENT_TLS_SSLMODE);
 		environmentVariables.put("PGBOUNCER_CLIENT_TLS_KEY_FILE", cfg.clientTlsKeyFile().getAbsolutePath());
 		environmentVariables.put("PGBOUNCER_CLIENT_TLS_CERT_FILE", cfg.clientTlsCertFile().getAbsolutePath());
-		String command = cfg.pgBouncerExec().getAbsolutePath();
-		var argsStream = Utils.Lots.stream(args)
-				.filter(Utils.Strings::isNotBlank)
-				.ifEmpty(Utils.Lots.defer(() -> cfg.pgBouncerArgumentsDefault()));
-		command = StreamEx.of(command).append(argsStream).joining(" ");
-		var process = Procs.start(command, null, environmentVariables);
-		this.onScrap(() -> process.cancel(true));
-		process.listener(this::scrap);
-		logger.info("pgbouncer started:{}", this.pgBouncerAddress);
+		this.environmentVariables = environmentVariables;
+		var processes = new ArrayList<ProcessLFP>(instances.size());
+		if (managedLayout) {
+			// the image setup renders the shared ini once, each instance then runs the binary on a derived copy
+			var setupCommand = StreamEx.of(cfg.pgBouncerExec().getAbsolutePath())
+					.append(cfg.pgBouncerSetupArguments())
+					.joining(" ");
+			Procs.execute(setupCommand, ctx -> {
+				ctx.environment(environmentVariables);
+				ctx.exitValueNormal();
+			});
+		}
+		// each slot restarts on its own, so a crash costs neither the sibling processes nor the app
+		for (int i = 0; i < instances.size(); i++) {
+			var slot = i;
+			var supervisor = new ProcessSupervisor(String.format("pgbouncer-%s", slot), () -> startSlot(slot));
+			supervisor.onScrap(this::scrap);
+			this.onScrap(supervisor::scrap);
+			supervisors.add(supervisor);
+			var process = supervisor.start();
+			if (process != null)
+				processes.add(process);
+		}
+		logger.info("pgbouncer started:{} instances:{}", this.pgBouncerAddress, instances.size());
 		var startupTimeout = cfg.startupTimeout();
 		if (startupTimeout != null) {
 			var startupTimeoutAt = Utils.Times.nowDate(zdt -> zdt.plus(startupTimeout));
@@ -173,86 +291,195 @@ public class PGBouncerExecService extends Scrapable.Impl {
 			Requires.isTrue(pgBouncerServiceReady, "pgBouncer startup timed out after %sms", startupTimeout.toMillis());
 		}
 
-		return process;
+		if (cfg.onlineRestartEnabled())
+			watchBinary(cfg.pgBouncerBinary(), cfg.onlineRestartBinaryPollInterval());
+		return List.copyOf(processes);
 	}
 
-	private static boolean writeToFile(Bytes content, File file) throws FileNotFoundException, IOException {
-		if (content == null || content.isEmpty())
-			return file.delete();
-		Bytes currentHash;
-		if (file.exists())
-			try (var fis = new FileInputStream(file)) {
-				currentHash = Utils.Crypto.hashMD5(fis);
+	/**
+	 * replaces every instance in turn. the replacement binds next to the running process through so_reuseport and
+	 * must answer on the admin console before the old process is told to stop accepting and exit once its clients
+	 * have disconnected, so the port keeps a listener and established clients stay connected. the kernel assigns each
+	 * new connection to one listener's accept queue, so connections still queued on the old process's listener when
+	 * it closes are reset and those clients have to reconnect.
+	 */
+	public void restartOnline() {
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		Requires.isTrue(cfg.onlineRestartEnabled(), "online restart disabled");
+		processMuto.updateAndGet(processes -> {
+			try {
+				for (int i = 0; i < instances.size(); i++)
+					replaceInstance(i);
+			} catch (IOException e) {
+				throw RuntimeException.class.isInstance(e) ? RuntimeException.class.cast(e) : new RuntimeException(e);
 			}
-		else
-			currentHash = Utils.Bits.empty();
-		Bytes contentHash;
-		try (var is = content.inputStream()) {
-			contentHash = Utils.Crypto.hashMD5(is);
+			return StreamEx.of(instances).map(PGBouncerInstance::getProcess).toList();
+		}, Objects::nonNull);
+	}
+
+	protected PGBouncerInstance replaceInstance(int slot) throws IOException {
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		var instance = instances.get(slot);
+		var supervisor = supervisors.get(slot);
+		// alternate between two peer ids per slot so the old and new process never share one
+		var peerId = instance.getPeerId() > instanceCount ? instance.getPeerId() - instanceCount
+				: instance.getPeerId() + instanceCount;
+		var replacement = createInstance(peerId);
+		logger.info("online restart started. peerId:{}->{}", instance.getPeerId(), peerId);
+		try {
+			launchInstance(replacement);
+			awaitAdminConsole(replacement, cfg.startupTimeout());
+		} catch (IOException | RuntimeException e) {
+			stopInstance(replacement);
+			throw e;
 		}
-		if (Objects.equals(currentHash, contentHash))
-			return false;
-		file.getParentFile().mkdirs();
-		try (var is = content.inputStream(); var fos = new FileOutputStream(file)) {
-			is.transferTo(fos);
+		supervisor.adopt(replacement.getProcess());
+		instances.set(slot, replacement);
+		try {
+			instance.getAdminClient().execute("SHUTDOWN WAIT_FOR_CLIENTS");
+		} catch (QueryException e) {
+			instances.set(slot, instance);
+			supervisor.adopt(instance.getProcess());
+			stopInstance(replacement);
+			throw e;
+		} catch (IOException e) {
+			// pgbouncer may close the admin connection as soon as the shutdown begins
+			logger.debug("admin connection closed during shutdown. peerId:{}", instance.getPeerId(), e);
 		}
-		return true;
+		instance.getAdminClient().scrap();
+		var process = instance.getProcess();
+		drainingProcesses.add(process);
+		var drainTimeout = cfg.onlineRestartDrainTimeout();
+		var killFuture = Threads.Pools.centralPool().submitScheduled(() -> {
+			logger.warn("online restart drain timed out, stopping process. peerId:{}", instance.getPeerId());
+			process.cancel(true);
+		}, drainTimeout.toMillis());
+		process.listener(() -> {
+			killFuture.cancel(false);
+			drainingProcesses.remove(process);
+			logger.info("online restart drained. peerId:{}", instance.getPeerId());
+		});
+		logger.info("online restart complete. peerId:{}->{}", instance.getPeerId(), peerId);
+		return replacement;
 	}
 
-	private static Entry<Bytes, Bytes> generateDummyCertEntry() {
-		var directory = Utils.Files.tempFile(THIS_CLASS, "dummy-certs", Utils.Crypto.getSecureRandomString())
-				.deleteAllOnScrap(true);
-		directory.mkdirs();
-		try (directory) {
-			var days = 365 * 25;
-			var dns = "dummy-" + Utils.Crypto.getSecureRandomString() + ".com";
-			var keyFile = new File(directory, "dummy.key");
-			var certFile = new File(directory, "dummy.cert");
-			var commandTemplate = "openssl req -x509 -newkey rsa:4096 -sha256 -days {{{DAYS}}} -nodes -keyout {{{KEY_FILE}}} -out {{{CERT_FILE}}} -subj \"/CN={{{DNS}}}\" -addext \"subjectAltName=DNS:{{{DNS}}}\"";
-			var command = Utils.Strings.templateApply(commandTemplate, "DAYS", days, "DNS", dns, "KEY_FILE",
-					keyFile.getName(), "CERT_FILE", certFile.getName());
-			Procs.execute(command, ppe -> {
-				ppe.directory(directory);
-				ppe.disableOutputLog();
-			});
-			var keyValue = Utils.Bits.from(keyFile);
-			var certValue = Utils.Bits.from(certFile);
-			return Map.entry(keyValue, certValue);
-		} catch (IOException e) {
-			throw RuntimeException.class.isInstance(e) ? RuntimeException.class.cast(e) : new RuntimeException(e);
+	private PGBouncerInstance createInstance(int peerId) {
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		PGBouncerAdminClient adminClient = null;
+		if (cfg.adminConsoleClientEnabled()) {
+			var credentials = PGBouncerAdminCredentials.get();
+			// an online restart briefly runs two processes per slot
+			var processCount = cfg.onlineRestartEnabled() ? instanceCount * 2 : instanceCount;
+			adminClient = new PGBouncerAdminClient(this.pgBouncerAddress, credentials.getUser(),
+					credentials.getPassword(), cfg.adminConsoleTimeout(),
+					this.clientTLSInstaller::getPinnedCertValues, peerId, processCount);
 		}
+		return new PGBouncerInstance(peerId, PGBouncerInstance.getDirectory(cfg.instancesDirectory(), peerId),
+				adminClient);
 	}
 
-	private static void logCertificateSummary(Bytes keyValue, Bytes certValue) {
-		logCertificateSummary(keyValue, certValue, false);
+	private ProcessLFP launchInstance(PGBouncerInstance instance) throws IOException {
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		var peerIdCount = cfg.onlineRestartEnabled() ? instanceCount * 2 : instanceCount;
+		var peerIds = IntStreamEx.rangeClosed(1, peerIdCount).boxed().toList();
+		instance.writeConfIni(cfg.confIni(), peerIds, this.pgBouncerAddress.getPort());
+		var daemonUser = cfg.pgBouncerDaemonUser();
+		var daemonPrincipal = FileSystems.getDefault().getUserPrincipalLookupService()
+				.lookupPrincipalByName(daemonUser);
+		Files.setOwner(instance.getDirectory().toPath(), daemonPrincipal);
+		var command = String.format("su -s /bin/sh -c \"exec %s %s\" %s", cfg.pgBouncerBinary().getAbsolutePath(),
+				instance.getConfIni().getAbsolutePath(), daemonUser);
+		return startProcess(instance, command, environmentVariables);
 	}
 
-	private static void logCertificateSummary(Bytes keyValue, Bytes certValue, boolean force) {
-		if (!force && !Configs.get(PGBouncerAppConfig.class).logCertificateSummaries())
+	private void awaitAdminConsole(PGBouncerInstance instance, Duration timeout) throws IOException {
+		var timeoutAt = System.nanoTime() + timeout.toNanos();
+		while (true) {
+			try {
+				instance.getAdminClient().query("SHOW VERSION");
+				return;
+			} catch (QueryException e) {
+				throw e;
+			} catch (IOException e) {
+				if (instance.getProcess().isDone() || System.nanoTime() >= timeoutAt)
+					throw e;
+			}
+			Threads.sleepUnchecked(Duration.ofSeconds(1));
+		}
+	}
+
+	private void stopInstance(PGBouncerInstance instance) {
+		var adminClient = instance.getAdminClient();
+		if (adminClient != null)
+			adminClient.scrap();
+		var process = instance.getProcess();
+		if (process != null)
+			process.cancel(true);
+	}
+
+	private void watchBinary(File binary, Duration pollInterval) {
+		if (pollInterval == null || pollInterval.isZero() || pollInterval.isNegative())
 			return;
-		logger.info("Key Updated:{}", getSummary(keyValue));
-		logger.info("Cert Updated:{}", getSummary(certValue));
+		var stamp = new AtomicReference<>(List.of(binary.lastModified(), binary.length()));
+		Runnable pollTask = () -> {
+			var current = List.of(binary.lastModified(), binary.length());
+			if (current.equals(stamp.getAndSet(current)))
+				return;
+			logger.info("pgbouncer binary changed, restarting online:{}", binary.getAbsolutePath());
+			try {
+				restartOnline();
+			} catch (Throwable t) {
+				if (!Utils.Exceptions.isCancelException(t))
+					logger.warn("online restart failed", t);
+			}
+		};
+		var pollFuture = FutureUtils.scheduleWhile(Threads.Pools.centralPool(), pollInterval.toMillis(), false,
+				pollTask, () -> !this.isScrapped());
+		Threads.Futures.onScrapCancel(this, pollFuture, true);
 	}
 
-	private static String getSummary(Bytes certValue) {
-		CertificateInfo certificateInfo;
-		try {
-			certificateInfo = CertigoServiceImpl.get().dump(certValue);
-		} catch (IOException e) {
-			throw RuntimeException.class.isInstance(e) ? RuntimeException.class.cast(e) : new RuntimeException(e);
+	private ProcessLFP startSlot(int slot) throws IOException {
+		var instance = instances.get(slot);
+		if (managedLayout)
+			return launchInstance(instance);
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		var argsStream = Utils.Lots.stream(args)
+				.filter(Utils.Strings::isNotBlank)
+				.ifEmpty(Utils.Lots.defer(() -> cfg.pgBouncerArgumentsDefault()));
+		var command = StreamEx.of(cfg.pgBouncerExec().getAbsolutePath()).append(argsStream).joining(" ");
+		return startProcess(instance, command, environmentVariables);
+	}
+
+	private ProcessLFP startProcess(PGBouncerInstance instance, String command,
+			Map<String, String> environmentVariables) throws IOException {
+		var cfg = Configs.get(PGBouncerAppConfig.class);
+		ProcessLFP process;
+		if (!cfg.processOutputParsingEnabled())
+			process = Procs.start(command, null, environmentVariables);
+		else {
+			var outputReader = new ProcessOutputReader(logSink, new PGBouncerLogParser(logSink),
+					cfg.processOutputBufferSize());
+			process = Procs.start(command, ctx -> {
+				ctx.disableOutputLog();
+				ctx.redirectOutput(outputReader);
+				ctx.redirectError(outputReader);
+			}, environmentVariables);
+			process.listener(outputReader::close);
 		}
-		var size = Optional.ofNullable(certificateInfo)
-				.map(CertificateInfo::getCertificates)
-				.map(Collection::size)
-				.orElse(0);
-		if (size > 0)
-			return Serials.Gsons.get().toJson(certificateInfo);
-		return Utils.Crypto.hashMD5(certValue).encodeHex();
+		instance.setProcess(process);
+		return process;
+	}
+
+	private static void logCertificateSummary(CertStore certStore) {
+		if (!Configs.get(PGBouncerAppConfig.class).logCertificateSummaries())
+			return;
+		logger.info("Cert Updated:{}", Serials.Gsons.get().toJson(certStore.getCertificateData().toSummary()));
 	}
 
 	public static void main(String[] args) {
-		var dummyCertEntry = generateDummyCertEntry();
-		logCertificateSummary(dummyCertEntry.getKey(), dummyCertEntry.getValue(), true);
+		var dummyCertEntry = DUMMY_CERT_ENTRY.get();
+		var certificateData = CertificateData.parse(dummyCertEntry.getValue(), dummyCertEntry.getKey());
+		logger.info("Cert Summary:{}", Serials.Gsons.get().toJson(certificateData.toSummary()));
 	}
 
 }
@@ -0,0 +1,111 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import com.lfp.joe.process.ProcessLFP;
+
+/**
+ * one pgbouncer process sharing the listen port with its siblings through so_reuseport. each instance gets its own
+ * ini, unix socket directory and pidfile named after its peer_id, and every peer_id that may run is listed under
+ * [peers] so cancel requests reach the process that owns the connection.
+ */
+public class PGBouncerInstance {
+
+	private static final Pattern SECTION_PATTERN = Pattern.compile("^\\s*\\[([^\\]]+)\\]\\s*$");
+	private static final Pattern KEY_PATTERN = Pattern.compile("^\\s*([A-Za-z_]+)\\s*=.*$");
+	private static final List<String> INSTANCE_KEYS = List.of("so_reuseport", "peer_id", "unix_socket_dir",
+			"pidfile");
+
+	private final int peerId;
+	private final File directory;
+	private final PGBouncerAdminClient adminClient;
+	private volatile ProcessLFP process;
+
+	public PGBouncerInstance(int peerId, File directory, PGBouncerAdminClient adminClient) {
+		this.peerId = peerId;
+		this.directory = Objects.requireNonNull(directory);
+		this.adminClient = adminClient;
+	}
+
+	public static File getDirectory(File instancesDirectory, int peerId) {
+		return new File(instancesDirectory, Objects.toString(peerId));
+	}
+
+	public int getPeerId() {
+		return peerId;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public File getConfIni() {
+		return new File(directory, "pgbouncer.ini");
+	}
+
+	public File getUnixSocketDirectory() {
+		return directory;
+	}
+
+	public PGBouncerAdminClient getAdminClient() {
+		return adminClient;
+	}
+
+	public ProcessLFP getProcess() {
+		return process;
+	}
+
+	protected void setProcess(ProcessLFP process) {
+		this.process = process;
+	}
+
+	/**
+	 * derives this instance's ini from the one generated by the image setup
+	 */
+	public void writeConfIni(File baseConfIni, List<Integer> peerIds, int port) throws IOException {
+		var lines = new ArrayList<String>();
+		String section = null;
+		for (var line : Files.readAllLines(baseConfIni.toPath(), StandardCharsets.UTF_8)) {
+			var sectionMatcher = SECTION_PATTERN.matcher(line);
+			if (sectionMatcher.matches()) {
+				section = sectionMatcher.group(1).trim().toLowerCase();
+				if ("peers".equals(section))
+					continue;
+				lines.add(line);
+				if ("pgbouncer".equals(section)) {
+					lines.add("so_reuseport = 1");
+					lines.add("peer_id = " + peerId);
+					lines.add("unix_socket_dir = " + getUnixSocketDirectory().getAbsolutePath());
+					lines.add("pidfile = " + new File(directory, "pgbouncer.pid").getAbsolutePath());
+				}
+				continue;
+			}
+			if ("peers".equals(section))
+				continue;
+			var keyMatcher = KEY_PATTERN.matcher(line);
+			if ("pgbouncer".equals(section) && keyMatcher.matches() && INSTANCE_KEYS.contains(keyMatcher.group(1)))
+				continue;
+			lines.add(line);
+		}
+		lines.add("");
+		lines.add("[peers]");
+		for (var peerId : peerIds)
+			lines.add(String.format("%s = host=%s port=%s", peerId,
+					getDirectory(directory.getParentFile(), peerId).getAbsolutePath(), port));
+		directory.mkdirs();
+		var confIni = getConfIni();
+		var tempFile = new File(directory, confIni.getName() + ".tmp");
+		Files.write(tempFile.toPath(), lines, StandardCharsets.UTF_8);
+		Files.move(tempFile.toPath(), confIni.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.lfp.pgbouncer_app.process.ProcessLogSink;
+import com.lfp.pgbouncer_app.process.ProcessLogSink.Level;
+import com.lfp.pgbouncer_app.process.ProcessOutputReader;
+
+/**
+ * classifies pgbouncer log lines such as
+ * {@code 2024-01-01 00:00:00.000 UTC [7] WARNING C-0x55d1: db/user@10.0.0.1:5000 pooler error: ...}. matchers are
+ * reused, so an instance belongs to a single reader.
+ */
+public class PGBouncerLogParser implements ProcessOutputReader.LineHandler {
+
+	private static final Pattern LINE_PATTERN = Pattern
+			.compile("^\\S+ \\S+ \\S+ \\[\\d+\\] ([A-Z]+) (?:([CS])-0x[0-9a-fA-F]+: )?(.*)$");
+	private static final Pattern LOGIN_FAILURE_PATTERN = Pattern.compile(
+			"pooler error: .*(auth|password|login failed|no such user|not allowed)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern TLS_FAILURE_PATTERN = Pattern.compile("(tls|ssl).*(handshake|error|fail)",
+			Pattern.CASE_INSENSITIVE);
+
+	private final ProcessLogSink sink;
+	private final Matcher lineMatcher = LINE_PATTERN.matcher("");
+	private final Matcher loginFailureMatcher = LOGIN_FAILURE_PATTERN.matcher("");
+	private final Matcher tlsFailureMatcher = TLS_FAILURE_PATTERN.matcher("");
+
+	public PGBouncerLogParser(ProcessLogSink sink) {
+		this.sink = Objects.requireNonNull(sink);
+	}
+
+	@Override
+	public void handle(CharSequence line) {
+		if (!lineMatcher.reset(line).matches()) {
+			// setup script output and anything else outside the log format
+			sink.log(Level.INFO, line);
+			return;
+		}
+		var level = toLevel(lineMatcher.group(1));
+		var connectionScoped = lineMatcher.start(2) >= 0;
+		var message = line.subSequence(lineMatcher.start(3), lineMatcher.end(3));
+		if (startsWith(message, "login attempt", true))
+			sink.event("login");
+		else if (loginFailureMatcher.reset(message).find())
+			sink.event("login_failure");
+		else if (tlsFailureMatcher.reset(message).find() && level.compareTo(Level.WARN) >= 0)
+			sink.event("tls_handshake_failure");
+		else if (contains(message, "pooler error:") || level == Level.ERROR)
+			sink.event("pool_error");
+		else if (contains(message, "closing because:"))
+			sink.event("closed");
+		if (level == Level.INFO && connectionScoped)
+			sink.sample(line);
+		else
+			sink.log(level, line);
+	}
+
+	private static Level toLevel(String value) {
+		switch (value) {
+		case "FATAL":
+		case "ERROR":
+			return Level.ERROR;
+		case "WARNING":
+			return Level.WARN;
+		case "LOG":
+			return Level.INFO;
+		default:
+			return Level.DEBUG;
+		}
+	}
+
+	private static boolean contains(CharSequence value, String search) {
+		var last = value.length() - search.length();
+		for (int i = 0; i <= last; i++)
+			if (regionMatches(value, i, search))
+				return true;
+		return false;
+	}
+
+	private static boolean startsWith(CharSequence value, String prefix, boolean skipAddress) {
+		var offset = 0;
+		if (skipAddress) {
+			// connection lines begin with db/user@address
+			for (int i = 0; i < value.length(); i++) {
+				if (value.charAt(i) == ' ') {
+					offset = i + 1;
+					break;
+				}
+			}
+		}
+		return regionMatches(value, offset, prefix);
+	}
+
+	private static boolean regionMatches(CharSequence value, int offset, String search) {
+		if (value.length() - offset < search.length())
+			return false;
+		for (int i = 0; i < search.length(); i++)
+			if (value.charAt(offset + i) != search.charAt(i))
+				return false;
+		return true;
+	}
+
+}
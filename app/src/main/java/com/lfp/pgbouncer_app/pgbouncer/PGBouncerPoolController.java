@@ -0,0 +1,279 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.threadly.concurrent.future.FutureUtils;
+
+import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.core.properties.Configs;
+import com.lfp.joe.threads.Threads;
+import com.lfp.joe.utils.Utils;
+import com.lfp.joe.utils.function.Requires;
+import com.lfp.pgbouncer_app.config.PGBouncerExecConfig;
+
+/**
+ * grows a database pool while clients queue on it and shrinks it again once it sits underused. sizes are written to
+ * the database entries of the ini and applied with a single RELOAD, since SET default_pool_size is global and would be
+ * reverted by the next reload anyway.
+ */
+public class PGBouncerPoolController extends Scrapable.Impl {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final String ADMIN_DATABASE = "pgbouncer";
+	private static final String WILDCARD_DATABASE = "*";
+	private static final Pattern SECTION_PATTERN = Pattern.compile("^\\s*\\[([^\\]]+)\\]\\s*$");
+	private static final Pattern DATABASE_PATTERN = Pattern
+			.compile("^(\\s*)(\"(?:[^\"]|\"\")+\"|[^=;#\\s]+)\\s*=\\s*(.*)$");
+	private static final Pattern PLAIN_NAME_PATTERN = Pattern.compile("[_0-9A-Za-z]+");
+	private static final Pattern PLAIN_VALUE_PATTERN = Pattern.compile("[^\\s']+");
+	private static final Pattern POOL_PARAMETER_PATTERN = Pattern
+			.compile("\\s*\\b(pool_size|reserve_pool|reserve_pool_size)\\s*=\\s*\\S+");
+
+	private final PGBouncerExecService execService;
+	private final Map<String, PoolState> poolStates = new HashMap<>();
+
+	public PGBouncerPoolController(PGBouncerExecService execService) {
+		this.execService = Objects.requireNonNull(execService);
+		Requires.isTrue(!execService.getAdminClients().isEmpty(), "admin console client required");
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		Runnable sampleTask = () -> {
+			try {
+				sample();
+			} catch (Throwable t) {
+				if (!Utils.Exceptions.isCancelException(t))
+					logger.warn("pool controller sample failed", t);
+			}
+		};
+		var sampleFuture = FutureUtils.scheduleWhile(Threads.Pools.centralPool(),
+				cfg.poolControllerInterval().toMillis(), false, sampleTask, () -> !this.isScrapped());
+		Threads.Futures.onScrapCancel(this, sampleFuture, true);
+	}
+
+	/**
+	 * returns true when pool sizes were changed and pgbouncer reloaded
+	 */
+	public synchronized boolean sample() throws IOException {
+		var cfg = Configs.get(PGBouncerExecConfig.class);
+		var adminClients = execService.getAdminClients();
+		var poolSizes = new HashMap<String, Integer>();
+		for (var row : adminClients.get(0).show("DATABASES"))
+			poolSizes.put(row.get("name"), parseInt(row.get("pool_size")));
+		// every instance runs its own pools, so a pool counts once per user and instance against the budget
+		var observations = new LinkedHashMap<String, Observation>();
+		for (var adminClient : adminClients) {
+			for (var row : adminClient.show("POOLS")) {
+				var database = row.get("database");
+				if (database == null || ADMIN_DATABASE.equals(database) || !poolSizes.containsKey(database))
+					continue;
+				var observation = observations.computeIfAbsent(database, nil -> new Observation());
+				observation.users++;
+				observation.waiting += parseInt(row.get("cl_waiting"));
+				observation.active = Math.max(observation.active, parseInt(row.get("sv_active")));
+				var maxWaitMicros = parseInt(row.get("maxwait")) * 1_000_000l + parseInt(row.get("maxwait_us"));
+				observation.maxWaitMicros = Math.max(observation.maxWaitMicros, maxWaitMicros);
+			}
+		}
+		poolStates.keySet().retainAll(observations.keySet());
+		var now = System.nanoTime();
+		var changes = new LinkedHashMap<String, Integer>();
+		var connections = 0l;
+		for (var ent : observations.entrySet()) {
+			var poolSize = poolSizes.get(ent.getKey());
+			var poolState = poolStates.computeIfAbsent(ent.getKey(), nil -> new PoolState(poolSize, cfg));
+			poolState.size = poolSize;
+			connections += (long) poolSize * ent.getValue().users;
+		}
+		for (var ent : observations.entrySet()) {
+			var observation = ent.getValue();
+			var poolState = poolStates.get(ent.getKey());
+			var size = poolState.next(observation, now, cfg);
+			if (size > poolState.size && cfg.poolServerConnectionBudget() > 0) {
+				var available = (cfg.poolServerConnectionBudget() - connections) / observation.users;
+				size = (int) Math.min(size, poolState.size + Math.max(0, available));
+			}
+			if (size == poolState.size)
+				continue;
+			connections += (long) (size - poolState.size) * observation.users;
+			changes.put(ent.getKey(), size);
+		}
+		if (changes.isEmpty())
+			return false;
+		var reserveSizes = new LinkedHashMap<String, Integer>();
+		for (var ent : changes.entrySet())
+			reserveSizes.put(ent.getKey(), (int) Math.ceil(ent.getValue() * cfg.poolReserveRatio()));
+		var updated = false;
+		for (var iniFile : execService.getConfIniFiles())
+			if (updateIni(iniFile, changes, reserveSizes))
+				updated = true;
+		if (!updated)
+			return false;
+		execService.reload();
+		for (var ent : changes.entrySet()) {
+			var poolState = poolStates.get(ent.getKey());
+			logger.info("pool resized. database:{} poolSize:{}->{} reservePool:{}", ent.getKey(), poolState.size,
+					ent.getValue(), reserveSizes.get(ent.getKey()));
+			poolState.resized(ent.getValue(), now);
+		}
+		return true;
+	}
+
+	protected static boolean updateIni(File iniFile, Map<String, Integer> poolSizes, Map<String, Integer> reserveSizes)
+			throws IOException {
+		var lines = new ArrayList<>(Files.readAllLines(iniFile.toPath(), StandardCharsets.UTF_8));
+		var pending = new LinkedHashMap<>(poolSizes);
+		String section = null;
+		int wildcardIndex = -1;
+		Matcher wildcardMatcher = null;
+		for (int i = 0; i < lines.size(); i++) {
+			var sectionMatcher = SECTION_PATTERN.matcher(lines.get(i));
+			if (sectionMatcher.matches()) {
+				section = sectionMatcher.group(1).trim();
+				continue;
+			}
+			if (!"databases".equalsIgnoreCase(section))
+				continue;
+			var matcher = DATABASE_PATTERN.matcher(lines.get(i));
+			if (!matcher.matches())
+				continue;
+			var name = unquote(matcher.group(2));
+			if (WILDCARD_DATABASE.equals(name)) {
+				wildcardIndex = i;
+				wildcardMatcher = matcher;
+				continue;
+			}
+			var poolSize = pending.remove(name);
+			if (poolSize == null)
+				continue;
+			lines.set(i, formatDatabase(matcher.group(1), matcher.group(2), matcher.group(3), poolSize,
+					reserveSizes.get(name)));
+		}
+		if (!pending.isEmpty()) {
+			if (wildcardMatcher == null) {
+				logger.warn("pool resize skipped, databases not found in ini:{}", pending.keySet());
+				if (pending.size() == poolSizes.size())
+					return false;
+			} else {
+				// auto-databases have no entry of their own, so materialize one from the wildcard template
+				var template = wildcardMatcher.group(3).trim();
+				var templateHasDatabase = template.matches(".*\\bdbname\\s*=.*");
+				var inserts = new ArrayList<String>();
+				for (var ent : pending.entrySet()) {
+					var connectionString = templateHasDatabase ? template
+							: template + " dbname=" + quoteValue(ent.getKey());
+					inserts.add(formatDatabase(wildcardMatcher.group(1), quoteName(ent.getKey()), connectionString,
+							ent.getValue(), reserveSizes.get(ent.getKey())));
+				}
+				lines.addAll(wildcardIndex, inserts);
+			}
+		}
+		var tempFile = new File(iniFile.getParentFile(), iniFile.getName() + ".tmp");
+		Files.write(tempFile.toPath(), lines, StandardCharsets.UTF_8);
+		Files.move(tempFile.toPath(), iniFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	private static String formatDatabase(String indent, String name, String connectionString, int poolSize,
+			Integer reserveSize) {
+		connectionString = POOL_PARAMETER_PATTERN.matcher(connectionString).replaceAll("").trim();
+		var line = String.format("%s%s = %s pool_size=%s", indent, name, connectionString, poolSize);
+		if (reserveSize != null)
+			line += " reserve_pool=" + reserveSize;
+		return line;
+	}
+
+	private static String unquote(String value) {
+		if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+			return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+		return value;
+	}
+
+	// database names outside [_0-9A-Za-z] use sql identifier quoting
+	private static String quoteName(String name) {
+		if (PLAIN_NAME_PATTERN.matcher(name).matches())
+			return name;
+		return "\"" + name.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String quoteValue(String value) {
+		if (PLAIN_VALUE_PATTERN.matcher(value).matches())
+			return value;
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	private static int parseInt(String value) {
+		if (value == null || value.isEmpty())
+			return 0;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static class Observation {
+
+		private int users;
+		private int waiting;
+		private int active;
+		private long maxWaitMicros;
+	}
+
+	private static class PoolState {
+
+		private final int minSize;
+		private int size;
+		private int growStreak;
+		private int shrinkStreak;
+		private long resizedAt;
+
+		public PoolState(int size, PGBouncerExecConfig cfg) {
+			this.minSize = cfg.poolSizeMin() > 0 ? cfg.poolSizeMin() : Math.max(1, size);
+			this.size = size;
+			this.resizedAt = System.nanoTime();
+		}
+
+		public int next(Observation observation, long now, PGBouncerExecConfig cfg) {
+			var growWaitMicros = cfg.poolGrowWaitThreshold().toNanos() / 1_000;
+			if (observation.waiting > 0 && observation.maxWaitMicros >= growWaitMicros) {
+				growStreak++;
+				shrinkStreak = 0;
+			} else if (observation.waiting == 0 && observation.active < size * cfg.poolShrinkUtilization()) {
+				shrinkStreak++;
+				growStreak = 0;
+			} else {
+				growStreak = 0;
+				shrinkStreak = 0;
+			}
+			if (now - resizedAt < cfg.poolControllerCooldown().toNanos())
+				return size;
+			var maxSize = Math.max(minSize, cfg.poolSizeMax());
+			if (growStreak >= cfg.poolGrowSamples())
+				return Math.max(size, Math.min(maxSize, size + cfg.poolSizeStep()));
+			if (shrinkStreak >= cfg.poolShrinkSamples())
+				return Math.min(size, Math.max(minSize, Math.max(observation.active, size - cfg.poolSizeStep())));
+			return size;
+		}
+
+		public void resized(int size, long now) {
+			this.size = size;
+			this.growStreak = 0;
+			this.shrinkStreak = 0;
+			this.resizedAt = now;
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.threadly.concurrent.future.FutureUtils;
+
+import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.threads.Threads;
+import com.lfp.joe.utils.Utils;
+import com.lfp.joe.utils.function.Requires;
+import com.lfp.pgbouncer_app.metrics.MetricsService;
+import com.lfp.pgbouncer_app.metrics.PrometheusWriter;
+import com.lfp.pgbouncer_app.metrics.PrometheusWriter.Type;
+
+public class PGBouncerStatsCollector extends Scrapable.Impl implements MetricsService.Collector {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final String[] DATABASE_LABELS = { "database" };
+	private static final String[] POOL_LABELS = { "database", "user" };
+	private static final String[] CONNECTION_LABELS = { "database", "user", "state" };
+	private static final String[] POOL_COLUMNS = { "cl_active", "cl_waiting", "sv_active", "sv_idle", "sv_used" };
+	private static final String[] STAT_COLUMNS = { "total_xact_count", "total_query_count", "total_received",
+			"total_sent", "total_xact_time", "total_query_time", "total_wait_time" };
+	private static final int XACT_COUNT = 0;
+	private static final int QUERY_COUNT = 1;
+	private static final int RECEIVED = 2;
+	private static final int SENT = 3;
+	private static final int XACT_TIME = 4;
+	private static final int QUERY_TIME = 5;
+	private static final int WAIT_TIME = 6;
+	private static final double MICROS_PER_SECOND = 1_000_000d;
+
+	private final Supplier<List<PGBouncerAdminClient>> adminClientsSupplier;
+	private volatile Sample sample;
+
+	/**
+	 * samples from several instances are summed, except for max wait which takes the oldest waiter
+	 */
+	public PGBouncerStatsCollector(Supplier<List<PGBouncerAdminClient>> adminClientsSupplier,
+			Duration sampleInterval) {
+		this.adminClientsSupplier = Objects.requireNonNull(adminClientsSupplier);
+		Runnable sampleTask = () -> {
+			try {
+				sample();
+			} catch (Throwable t) {
+				this.sample = null;
+				if (!Utils.Exceptions.isCancelException(t))
+					logger.debug("pgbouncer stats sample failed", t);
+			}
+		};
+		var sampleFuture = FutureUtils.scheduleWhile(Threads.Pools.centralPool(), sampleInterval.toMillis(), false,
+				sampleTask, () -> !this.isScrapped());
+		Threads.Futures.onScrapCancel(this, sampleFuture, true);
+	}
+
+	public Sample getSample() {
+		return sample;
+	}
+
+	public Sample sample() throws IOException {
+		var pools = new LinkedHashMap<List<String>, double[]>();
+		var stats = new LinkedHashMap<String, long[]>();
+		var clients = new LinkedHashMap<List<String>, Long>();
+		var servers = new LinkedHashMap<List<String>, Long>();
+		var adminClients = adminClientsSupplier.get();
+		Requires.isTrue(!adminClients.isEmpty(), "admin console client required");
+		for (var adminClient : adminClients) {
+			parsePools(adminClient.show("POOLS"), pools);
+			parseStats(adminClient.show("STATS"), stats);
+			countConnections(adminClient.show("CLIENTS"), clients);
+			countConnections(adminClient.show("SERVERS"), servers);
+		}
+		var next = new Sample(System.nanoTime(), pools, stats, clients, servers, this.sample);
+		this.sample = next;
+		return next;
+	}
+
+	@Override
+	public void collect(PrometheusWriter writer) {
+		var sample = this.sample;
+		writer.family("pgbouncer_up", "whether the last admin console sample succeeded", Type.GAUGE);
+		writer.sample("pgbouncer_up", sample == null ? 0 : 1);
+		if (sample == null)
+			return;
+		var labelValues = new String[POOL_LABELS.length];
+		for (int i = 0; i <= POOL_COLUMNS.length; i++) {
+			var name = i < POOL_COLUMNS.length ? "pgbouncer_pool_" + POOL_COLUMNS[i] : "pgbouncer_pool_max_wait_seconds";
+			writer.family(name, i < POOL_COLUMNS.length ? null : "age of the oldest waiting client", Type.GAUGE);
+			for (var ent : sample.pools.entrySet()) {
+				labelValues[0] = ent.getKey().get(0);
+				labelValues[1] = ent.getKey().get(1);
+				writer.sample(name, POOL_LABELS, labelValues, ent.getValue()[i]);
+			}
+		}
+		collectStats(writer, sample);
+		collectConnections(writer, "pgbouncer_clients", sample.clients);
+		collectConnections(writer, "pgbouncer_servers", sample.servers);
+	}
+
+	private static void collectStats(PrometheusWriter writer, Sample sample) {
+		var labelValues = new String[1];
+		for (int i = 0; i < STAT_COLUMNS.length; i++) {
+			var name = "pgbouncer_stats_" + STAT_COLUMNS[i];
+			writer.family(name, null, Type.COUNTER);
+			for (var ent : sample.stats.entrySet()) {
+				labelValues[0] = ent.getKey();
+				writer.sample(name, DATABASE_LABELS, labelValues, ent.getValue()[i]);
+			}
+		}
+		if (sample.rates.isEmpty())
+			return;
+		writeRate(writer, sample, "pgbouncer_transactions_per_second", XACT_COUNT, 1);
+		writeRate(writer, sample, "pgbouncer_queries_per_second", QUERY_COUNT, 1);
+		writeRate(writer, sample, "pgbouncer_received_bytes_per_second", RECEIVED, 1);
+		writeRate(writer, sample, "pgbouncer_sent_bytes_per_second", SENT, 1);
+		writeRate(writer, sample, "pgbouncer_client_wait_seconds_per_second", WAIT_TIME, MICROS_PER_SECOND);
+		writeLatency(writer, sample, "pgbouncer_transaction_latency_seconds", XACT_TIME, XACT_COUNT);
+		writeLatency(writer, sample, "pgbouncer_query_latency_seconds", QUERY_TIME, QUERY_COUNT);
+	}
+
+	private static void writeRate(PrometheusWriter writer, Sample sample, String name, int column, double divisor) {
+		var labelValues = new String[1];
+		writer.family(name, null, Type.GAUGE);
+		for (var ent : sample.rates.entrySet()) {
+			labelValues[0] = ent.getKey();
+			writer.sample(name, DATABASE_LABELS, labelValues, ent.getValue()[column] / sample.elapsedSeconds / divisor);
+		}
+	}
+
+	private static void writeLatency(PrometheusWriter writer, Sample sample, String name, int timeColumn,
+			int countColumn) {
+		var labelValues = new String[1];
+		writer.family(name, "mean latency over the last sample interval", Type.GAUGE);
+		for (var ent : sample.rates.entrySet()) {
+			var count = ent.getValue()[countColumn];
+			labelValues[0] = ent.getKey();
+			var latency = count <= 0 ? 0 : ent.getValue()[timeColumn] / count / MICROS_PER_SECOND;
+			writer.sample(name, DATABASE_LABELS, labelValues, latency);
+		}
+	}
+
+	private static void collectConnections(PrometheusWriter writer, String name, Map<List<String>, Long> counts) {
+		var labelValues = new String[CONNECTION_LABELS.length];
+		writer.family(name, null, Type.GAUGE);
+		for (var ent : counts.entrySet()) {
+			for (int i = 0; i < labelValues.length; i++)
+				labelValues[i] = ent.getKey().get(i);
+			writer.sample(name, CONNECTION_LABELS, labelValues, ent.getValue());
+		}
+	}
+
+	private static void parsePools(List<Map<String, String>> rows, Map<List<String>, double[]> pools) {
+		for (var row : rows) {
+			var key = List.of(Objects.toString(row.get("database"), ""), Objects.toString(row.get("user"), ""));
+			var values = pools.computeIfAbsent(key, nil -> new double[POOL_COLUMNS.length + 1]);
+			for (int i = 0; i < POOL_COLUMNS.length; i++)
+				values[i] += parseDouble(row.get(POOL_COLUMNS[i]));
+			var maxWait = parseDouble(row.get("maxwait")) + parseDouble(row.get("maxwait_us")) / MICROS_PER_SECOND;
+			values[POOL_COLUMNS.length] = Math.max(values[POOL_COLUMNS.length], maxWait);
+		}
+	}
+
+	private static void parseStats(List<Map<String, String>> rows, Map<String, long[]> stats) {
+		for (var row : rows) {
+			var values = stats.computeIfAbsent(row.get("database"), nil -> new long[STAT_COLUMNS.length]);
+			for (int i = 0; i < STAT_COLUMNS.length; i++)
+				values[i] += (long) parseDouble(row.get(STAT_COLUMNS[i]));
+		}
+	}
+
+	private static void countConnections(List<Map<String, String>> rows, Map<List<String>, Long> counts) {
+		for (var row : rows) {
+			var key = List.of(Objects.toString(row.get("database"), ""), Objects.toString(row.get("user"), ""),
+					Objects.toString(row.get("state"), ""));
+			counts.merge(key, 1l, Long::sum);
+		}
+	}
+
+	private static double parseDouble(String value) {
+		if (value == null || value.isEmpty())
+			return 0;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	public static class Sample {
+
+		private final long sampledAtNanos;
+		private final Map<List<String>, double[]> pools;
+		private final Map<String, long[]> stats;
+		private final Map<List<String>, Long> clients;
+		private final Map<List<String>, Long> servers;
+		private final Map<String, double[]> rates;
+		private final double elapsedSeconds;
+
+		protected Sample(long sampledAtNanos, Map<List<String>, double[]> pools, Map<String, long[]> stats,
+				Map<List<String>, Long> clients, Map<List<String>, Long> servers, Sample previous) {
+			this.sampledAtNanos = sampledAtNanos;
+			this.pools = pools;
+			this.stats = stats;
+			this.clients = clients;
+			this.servers = servers;
+			var rates = new HashMap<String, double[]>();
+			var elapsedSeconds = 0d;
+			if (previous != null) {
+				elapsedSeconds = (sampledAtNanos - previous.sampledAtNanos) / 1_000_000_000d;
+				for (var ent : stats.entrySet()) {
+					var previousValues = previous.stats.get(ent.getKey());
+					if (previousValues == null || elapsedSeconds <= 0)
+						continue;
+					var deltas = new double[STAT_COLUMNS.length];
+					for (int i = 0; i < deltas.length; i++)
+						// counters reset when pgbouncer restarts
+						deltas[i] = Math.max(0, ent.getValue()[i] - previousValues[i]);
+					rates.put(ent.getKey(), deltas);
+				}
+			}
+			this.rates = rates;
+			this.elapsedSeconds = elapsedSeconds;
+		}
+
+		public Map<List<String>, double[]> getPools() {
+			return pools;
+		}
+
+		public Map<String, long[]> getStats() {
+			return stats;
+		}
+
+		public Map<String, double[]> getRates() {
+			return rates;
+		}
+
+		public double getElapsedSeconds() {
+			return elapsedSeconds;
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.lfp.pgbouncer_app.process;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.lfp.joe.core.properties.Configs;
+import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.metrics.PrometheusWriter;
+import com.lfp.pgbouncer_app.metrics.PrometheusWriter.Type;
+
+/**
+ * counts structured events parsed from a child process and decides which lines reach the logger. routine
+ * per-connection lines are sampled and everything else is rate limited per second, with the number of suppressed
+ * lines reported once the window rolls over.
+ */
+public class ProcessLogSink {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final String[] PROCESS_LABELS = { "process" };
+	private static final String[] EVENT_LABELS = { "process", "event" };
+
+	public static enum Level {
+		DEBUG, INFO, WARN, ERROR;
+	}
+
+	private final String name;
+	private final org.slf4j.Logger logger;
+	private final Map<String, AtomicLong> events = new ConcurrentHashMap<>();
+	private final AtomicLong sampleCounter = new AtomicLong();
+	private final AtomicLong droppedBytes = new AtomicLong();
+	private final AtomicLong suppressedTotal = new AtomicLong();
+	private long windowStartedAt;
+	private int windowCount;
+	private int windowSuppressed;
+
+	public ProcessLogSink(String name) {
+		this.name = Objects.requireNonNull(name);
+		this.logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS.getName() + "." + name);
+		this.windowStartedAt = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void event(String event) {
+		events.computeIfAbsent(event, nil -> new AtomicLong()).incrementAndGet();
+	}
+
+	public void dropped(int bytes) {
+		droppedBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * logs one in every processLogSampleRate calls
+	 */
+	public void sample(CharSequence line) {
+		var sampleRate = Math.max(1, Configs.get(PGBouncerAppConfig.class).processLogSampleRate());
+		if (sampleCounter.getAndIncrement() % sampleRate != 0)
+			return;
+		log(Level.INFO, line);
+	}
+
+	public void log(Level level, CharSequence line) {
+		if (!isEnabled(level) || !acquire())
+			return;
+		var message = line.toString();
+		switch (level) {
+		case ERROR:
+			logger.error(message);
+			break;
+		case WARN:
+			logger.warn(message);
+			break;
+		case INFO:
+			logger.info(message);
+			break;
+		default:
+			logger.debug(message);
+			break;
+		}
+	}
+
+	private boolean isEnabled(Level level) {
+		switch (level) {
+		case ERROR:
+			return logger.isErrorEnabled();
+		case WARN:
+			return logger.isWarnEnabled();
+		case INFO:
+			return logger.isInfoEnabled();
+		default:
+			return logger.isDebugEnabled();
+		}
+	}
+
+	private boolean acquire() {
+		int suppressed = 0;
+		boolean acquired;
+		synchronized (this) {
+			var now = System.nanoTime();
+			if (now - windowStartedAt >= TimeUnit.SECONDS.toNanos(1)) {
+				suppressed = windowSuppressed;
+				windowStartedAt = now;
+				windowCount = 0;
+				windowSuppressed = 0;
+			}
+			acquired = windowCount++ < Configs.get(PGBouncerAppConfig.class).processLogRateLimit();
+			if (!acquired) {
+				windowSuppressed++;
+				suppressedTotal.incrementAndGet();
+			}
+		}
+		if (suppressed > 0)
+			logger.warn("suppressed {} log lines", suppressed);
+		return acquired;
+	}
+
+	public static void collect(PrometheusWriter writer, Collection<ProcessLogSink> sinks) {
+		var eventLabelValues = new String[EVENT_LABELS.length];
+		writer.family("pgbouncer_app_process_log_events_total", "events parsed from child process output",
+				Type.COUNTER);
+		for (var sink : sinks) {
+			eventLabelValues[0] = sink.name;
+			for (var ent : sink.events.entrySet()) {
+				eventLabelValues[1] = ent.getKey();
+				writer.sample("pgbouncer_app_process_log_events_total", EVENT_LABELS, eventLabelValues,
+						ent.getValue().get());
+			}
+		}
+		var labelValues = new String[PROCESS_LABELS.length];
+		writer.family("pgbouncer_app_process_log_suppressed_total", null, Type.COUNTER);
+		for (var sink : sinks) {
+			labelValues[0] = sink.name;
+			writer.sample("pgbouncer_app_process_log_suppressed_total", PROCESS_LABELS, labelValues,
+					sink.suppressedTotal.get());
+		}
+		writer.family("pgbouncer_app_process_output_dropped_bytes_total", null, Type.COUNTER);
+		for (var sink : sinks) {
+			labelValues[0] = sink.name;
+			writer.sample("pgbouncer_app_process_output_dropped_bytes_total", PROCESS_LABELS, labelValues,
+					sink.droppedBytes.get());
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.lfp.pgbouncer_app.process;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.threadly.concurrent.wrapper.limiter.ExecutorLimiter;
+
+import com.lfp.joe.threads.Threads;
+import com.lfp.joe.utils.Utils;
+
+/**
+ * output stream handed to a child process pump. writes only copy into a ring buffer, so a slow consumer drops output
+ * instead of backing up the pipe. lines are split and decoded on a pool thread, one drain at a time.
+ */
+public class ProcessOutputReader extends OutputStream {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final int MAX_LINE_LENGTH = 16 * 1024;
+
+	/**
+	 * the line is only valid for the duration of the call
+	 */
+	@FunctionalInterface
+	public static interface LineHandler {
+
+		void handle(CharSequence line);
+	}
+
+	private final ProcessLogSink sink;
+	private final LineHandler lineHandler;
+	private final byte[] buffer;
+	private final int mask;
+	private final AtomicLong writePosition = new AtomicLong();
+	private final AtomicLong readPosition = new AtomicLong();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final Executor drainExecutor = new ExecutorLimiter(Threads.Pools.centralPool(), 1);
+	private final ByteBuffer lineBytes = ByteBuffer.allocate(MAX_LINE_LENGTH);
+	private final CharBuffer lineChars = CharBuffer.allocate(MAX_LINE_LENGTH);
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private volatile boolean closed;
+	private boolean discarding;
+
+	public ProcessOutputReader(ProcessLogSink sink, LineHandler lineHandler, int capacity) {
+		this.sink = Objects.requireNonNull(sink);
+		this.lineHandler = Objects.requireNonNull(lineHandler);
+		var size = Integer.highestOneBit(Math.max(1024, capacity - 1)) << 1;
+		this.buffer = new byte[size];
+		this.mask = size - 1;
+	}
+
+	@Override
+	public void write(int b) {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	// stdout and stderr pumps may share the reader, so producers serialize while the consumer stays lock free
+	@Override
+	public synchronized void write(byte[] b, int off, int len) {
+		if (discarding) {
+			// the rest of a line that lost its middle is dropped too, and the newline ends the buffered start of it
+			var skip = 0;
+			while (skip < len && b[off + skip] != '\n')
+				skip++;
+			if (skip > 0)
+				sink.dropped(skip);
+			if (skip == len)
+				return;
+			discarding = false;
+			off += skip;
+			len -= skip;
+		}
+		if (len <= 0)
+			return;
+		var write = writePosition.get();
+		var free = buffer.length - (write - readPosition.get());
+		if (len > free) {
+			sink.dropped(len);
+			// nothing is cut when the buffered output and the dropped chunk both end on a line
+			var atLineEnd = write == 0 || buffer[(int) ((write - 1) & mask)] == '\n';
+			discarding = !atLineEnd || b[off + len - 1] != '\n';
+			scheduleDrain();
+			return;
+		}
+		var index = (int) (write & mask);
+		var first = Math.min(len, buffer.length - index);
+		System.arraycopy(b, off, buffer, index, first);
+		if (first < len)
+			System.arraycopy(b, off + first, buffer, 0, len - first);
+		writePosition.set(write + len);
+		scheduleDrain();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		scheduleDrain();
+	}
+
+	private void scheduleDrain() {
+		if (drainScheduled.compareAndSet(false, true))
+			drainExecutor.execute(this::drain);
+	}
+
+	private void drain() {
+		drainScheduled.set(false);
+		var read = readPosition.get();
+		var write = writePosition.get();
+		try {
+			while (read < write) {
+				var b = buffer[(int) (read & mask)];
+				read++;
+				if (b == '\n')
+					emitLine();
+				else if (b != '\r' && lineBytes.hasRemaining())
+					lineBytes.put(b);
+			}
+			if (closed && lineBytes.position() > 0)
+				emitLine();
+		} finally {
+			readPosition.set(read);
+		}
+	}
+
+	private void emitLine() {
+		lineBytes.flip();
+		lineChars.clear();
+		decoder.reset();
+		decoder.decode(lineBytes, lineChars, true);
+		decoder.flush(lineChars);
+		lineBytes.clear();
+		lineChars.flip();
+		if (!lineChars.hasRemaining())
+			return;
+		try {
+			lineHandler.handle(lineChars);
+		} catch (Throwable t) {
+			if (!Utils.Exceptions.isCancelException(t))
+				logger.warn("process output handler error. name:{}", sink.getName(), t);
+		}
+	}
+
+}
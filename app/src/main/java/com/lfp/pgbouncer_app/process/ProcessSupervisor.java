@@ -0,0 +1,192 @@
+package com.lfp.pgbouncer_app.process;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.threadly.concurrent.future.ListenableFuture;
+import org.threadly.concurrent.future.SettableListenableFuture;
+
+import com.lfp.joe.core.function.Nada;
+import com.lfp.joe.core.function.Scrapable;
+import com.lfp.joe.core.properties.Configs;
+import com.lfp.joe.process.ProcessLFP;
+import com.lfp.joe.threads.Threads;
+import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.metrics.PrometheusWriter;
+import com.lfp.pgbouncer_app.metrics.PrometheusWriter.Type;
+
+/**
+ * restarts a child process whenever it exits, waiting a jittered exponential backoff between attempts. a process that
+ * stayed up for the reset interval starts over at the minimum backoff.
+ */
+public class ProcessSupervisor extends Scrapable.Impl {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final String[] LABEL_NAMES = { "process" };
+
+	private final String name;
+	private final Callable<ProcessLFP> starter;
+	private final SettableListenableFuture<Nada> terminationFuture = new SettableListenableFuture<>(false);
+	private final AtomicLong restarts = new AtomicLong();
+	private final AtomicLong downtimeNanos = new AtomicLong();
+	private volatile ProcessLFP process;
+	private volatile long downSince;
+	private long startedAt;
+	private int failures;
+	private ListenableFuture<?> restartFuture;
+
+	public ProcessSupervisor(String name, Callable<ProcessLFP> starter) {
+		this.name = Objects.requireNonNull(name);
+		this.starter = Objects.requireNonNull(starter);
+		this.downSince = System.nanoTime();
+		this.onScrap(() -> {
+			ListenableFuture<?> restartFuture;
+			synchronized (this) {
+				restartFuture = this.restartFuture;
+			}
+			if (restartFuture != null)
+				restartFuture.cancel(false);
+			var process = this.process;
+			if (process != null)
+				process.cancel(true);
+			terminationFuture.setResult(Nada.get());
+		});
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ProcessLFP getProcess() {
+		return process;
+	}
+
+	public boolean isRunning() {
+		var process = this.process;
+		return process != null && !process.isDone();
+	}
+
+	public long getRestarts() {
+		return restarts.get();
+	}
+
+	public Duration getDowntime() {
+		var downtime = downtimeNanos.get();
+		var downSince = this.downSince;
+		if (downSince != 0)
+			downtime += System.nanoTime() - downSince;
+		return Duration.ofNanos(downtime);
+	}
+
+	/**
+	 * completes when the supervisor gives up or is scrapped
+	 */
+	public ListenableFuture<Nada> getTerminationFuture() {
+		return terminationFuture;
+	}
+
+	public synchronized ProcessLFP start() {
+		if (this.isScrapped())
+			return null;
+		ProcessLFP process;
+		try {
+			process = Objects.requireNonNull(starter.call(), "starter returned null");
+		} catch (Throwable t) {
+			// a cancelled start will not be retried, so the supervisor stops and completes its termination future
+			if (Utils.Exceptions.isCancelException(t)) {
+				logger.info("process start cancelled. name:{}", name);
+				Threads.Pools.centralPool().execute(this::scrap);
+				return null;
+			}
+			logger.warn("process start failed. name:{}", name, t);
+			onFailure();
+			return null;
+		}
+		adopt(process);
+		return process;
+	}
+
+	/**
+	 * supervises a process started elsewhere, such as the replacement from an online restart. the previous process is
+	 * no longer watched.
+	 */
+	public synchronized void adopt(ProcessLFP process) {
+		Objects.requireNonNull(process);
+		this.process = process;
+		this.startedAt = System.nanoTime();
+		var downSince = this.downSince;
+		if (downSince != 0) {
+			downtimeNanos.addAndGet(this.startedAt - downSince);
+			this.downSince = 0;
+		}
+		process.listener(() -> onExit(process));
+	}
+
+	protected synchronized void onExit(ProcessLFP process) {
+		if (process != this.process || this.isScrapped())
+			return;
+		this.downSince = System.nanoTime();
+		var cfg = Configs.get(PGBouncerAppConfig.class);
+		if (this.downSince - startedAt >= cfg.processRestartResetAfter().toNanos())
+			failures = 0;
+		logger.warn("process exited. name:{}", name);
+		onFailure();
+	}
+
+	private void onFailure() {
+		if (this.downSince == 0)
+			this.downSince = System.nanoTime();
+		failures++;
+		var cfg = Configs.get(PGBouncerAppConfig.class);
+		var maxAttempts = cfg.processRestartMaxAttempts();
+		if (maxAttempts > 0 && failures > maxAttempts) {
+			logger.error("process restart attempts exhausted. name:{} attempts:{}", name, maxAttempts);
+			Threads.Pools.centralPool().execute(this::scrap);
+			return;
+		}
+		var delay = backoff(failures, cfg.processRestartMinBackoff(), cfg.processRestartMaxBackoff());
+		logger.info("process restart scheduled. name:{} attempt:{} delay:{}ms", name, failures, delay);
+		this.restartFuture = Threads.Pools.centralPool().submitScheduled(() -> {
+			restarts.incrementAndGet();
+			start();
+		}, delay);
+	}
+
+	// half the window is fixed and half random, so children that exit together do not restart in lockstep
+	private static long backoff(int attempt, Duration minBackoff, Duration maxBackoff) {
+		var maxMillis = Math.max(1, maxBackoff.toMillis());
+		var window = Math.min(maxMillis, minBackoff.toMillis() << Math.min(30, attempt - 1));
+		if (window <= 1)
+			return Math.max(0, window);
+		return window / 2 + ThreadLocalRandom.current().nextLong(window / 2 + 1);
+	}
+
+	public static void collect(PrometheusWriter writer, Collection<ProcessSupervisor> supervisors) {
+		var labelValues = new String[LABEL_NAMES.length];
+		writer.family("pgbouncer_app_process_up", "whether the supervised process is running", Type.GAUGE);
+		for (var supervisor : supervisors) {
+			labelValues[0] = supervisor.getName();
+			writer.sample("pgbouncer_app_process_up", LABEL_NAMES, labelValues, supervisor.isRunning() ? 1 : 0);
+		}
+		writer.family("pgbouncer_app_process_restarts_total", null, Type.COUNTER);
+		for (var supervisor : supervisors) {
+			labelValues[0] = supervisor.getName();
+			writer.sample("pgbouncer_app_process_restarts_total", LABEL_NAMES, labelValues,
+					supervisor.getRestarts());
+		}
+		writer.family("pgbouncer_app_process_downtime_seconds_total", null, Type.COUNTER);
+		for (var supervisor : supervisors) {
+			labelValues[0] = supervisor.getName();
+			writer.sample("pgbouncer_app_process_downtime_seconds_total", LABEL_NAMES, labelValues,
+					supervisor.getDowntime().toNanos() / 1_000_000_000d);
+		}
+	}
+
+}
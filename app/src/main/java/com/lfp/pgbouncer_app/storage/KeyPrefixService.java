@@ -1,5 +1,13 @@
 package com.lfp.pgbouncer_app.storage;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.Codec;
 import org.threadly.concurrent.future.FutureUtils;
@@ -11,11 +19,13 @@ import com.lfp.data.redisson.client.codec.GsonCodec;
 import com.lfp.data.redisson.tools.concurrent.KeepAliveSemaphore;
 import com.lfp.joe.cache.StatValue;
 import com.lfp.joe.core.properties.Configs;
+import com.lfp.joe.serial.Serials;
 import com.lfp.joe.threads.Threads;
 import com.lfp.joe.utils.Utils;
 import com.lfp.joe.utils.function.KeyGenerator;
 import com.lfp.joe.utils.function.Requires;
 import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.config.StorageRedisTopology;
 
 public class KeyPrefixService {
 
@@ -28,7 +38,8 @@ public class KeyPrefixService {
 			KEY_PREFIX_VALUE_STORE_TT);
 	private final RedissonClient redisClient;
 	private final String host;
-	private String _value;
+	private final AtomicLong lockWaitNanos = new AtomicLong();
+	private volatile String _value;
 
 	public KeyPrefixService(RedissonClient redisClient, String host) {
 		this.redisClient = Requires.nonNull(redisClient);
@@ -40,14 +51,99 @@ public class KeyPrefixService {
 			synchronized (this) {
 				if (_value == null) {
 					var value = Configs.get(PGBouncerAppConfig.class).storageKeyPrefix();
-					if (Utils.Strings.isBlank(value))
-						value = Threads.Futures.join(getOrCreateValue()).getValue();
+					if (Utils.Strings.isBlank(value)) {
+						var cachedStatValue = readCachedValue();
+						if (cachedStatValue != null) {
+							value = cachedStatValue.getValue();
+							Threads.Pools.centralPool().submit(() -> revalidate(cachedStatValue));
+						} else {
+							var statValue = Threads.Futures.join(getOrCreateValue());
+							writeCachedValue(statValue);
+							value = statValue.getValue();
+						}
+					}
+					// the digest script scans a single node, which only sees every key when they share a slot
+					if (isClusterTopology() && !isHashTagged(value))
+						throw new IllegalStateException(
+								"storage key prefix requires a hash tag in cluster topology, for example {prefix}:"
+										+ value);
 					_value = value;
 				}
 			}
 		return _value;
 	}
 
+	/**
+	 * total time spent waiting on the lock, across every acquisition
+	 */
+	public Duration getLockWaitDuration() {
+		return Duration.ofNanos(lockWaitNanos.get());
+	}
+
+	private void revalidate(StatValue<String> cachedStatValue) {
+		var future = getCurrentValue().flatMap(statValue -> {
+			if (statValue != null)
+				return FutureUtils.immediateResultFuture(statValue);
+			var bucket = this.redisClient.getBucket(this.getStorageKey(), KEY_PREFIX_VALUE_STORE_CODEC);
+			var rfuture = bucket.trySetAsync(cachedStatValue);
+			return RedissonUtils.asListenableFuture(rfuture).flatMap(set -> {
+				if (Boolean.TRUE.equals(set))
+					return FutureUtils.immediateResultFuture(cachedStatValue);
+				return getCurrentValue();
+			});
+		});
+		future.resultCallback(statValue -> {
+			if (statValue == null || Objects.equals(statValue.getValue(), cachedStatValue.getValue()))
+				return;
+			// this process keeps using the cached prefix, so two prefixes are in use until it restarts
+			logger.error("storage key prefix in redis differs from the cached prefix, which stays in use until restart."
+					+ " cached:{} current:{}", cachedStatValue.getValue(), statValue.getValue());
+			writeCachedValue(statValue);
+		});
+		future.failureCallback(t -> logger.warn("storage key prefix revalidation failed", t));
+	}
+
+	private StatValue<String> readCachedValue() {
+		var file = getCacheFile();
+		if (!file.exists())
+			return null;
+		try {
+			var json = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+			StatValue<String> statValue = Serials.Gsons.get().fromJson(json, KEY_PREFIX_VALUE_STORE_TT.getType());
+			if (!isValid(statValue))
+				return null;
+			// cached before the topology changed, redis is asked again instead
+			if (isClusterTopology() && !isHashTagged(statValue.getValue())) {
+				logger.warn("storage key prefix cache discarded, cluster topology requires a hash tag. cached:{}",
+						statValue.getValue());
+				return null;
+			}
+			return statValue;
+		} catch (Exception e) {
+			logger.warn("storage key prefix cache read failed. file:{}", file.getAbsolutePath(), e);
+			return null;
+		}
+	}
+
+	private void writeCachedValue(StatValue<String> statValue) {
+		var file = getCacheFile();
+		try {
+			file.getParentFile().mkdirs();
+			var tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+			var json = Serials.Gsons.get().toJson(statValue, KEY_PREFIX_VALUE_STORE_TT.getType());
+			Files.writeString(tempFile.toPath(), json, StandardCharsets.UTF_8);
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			logger.warn("storage key prefix cache write failed. file:{}", file.getAbsolutePath(), e);
+		}
+	}
+
+	private File getCacheFile() {
+		var fileName = String.format("key-prefix-%s.json", Utils.Crypto.hashMD5(getStorageKey()).encodeHex());
+		return new File(Configs.get(PGBouncerAppConfig.class).dataDirectory(), fileName);
+	}
+
 	private String getStorageKey() {
 		return KeyGenerator.apply(this.host, "key", "prefix", THIS_CLASS, VERSION);
 	}
@@ -63,32 +159,55 @@ public class KeyPrefixService {
 				return FutureUtils.immediateResultFuture(statValue);
 			if (!locked) {
 				var semaphore = new KeepAliveSemaphore(this.redisClient, 1, getStorageKey(), "lock");
-				var acquireFuture = semaphore.acquireAsyncKeepAliveFlatSupply(() -> getOrCreateValue(true));
+				var lockStartedAt = System.nanoTime();
+				var acquireFuture = semaphore.acquireAsyncKeepAliveFlatSupply(() -> {
+					var lockWait = System.nanoTime() - lockStartedAt;
+					lockWaitNanos.addAndGet(lockWait);
+					logger.info("storage key prefix lock acquired. wait:{}ms", Duration.ofNanos(lockWait).toMillis());
+					return getOrCreateValue(true);
+				});
 				return acquireFuture;
 			}
-			var newStatValue = StatValue.build(KeyGenerator.apply(this.host, Utils.Crypto.getSecureRandomString()));
+			var newValue = KeyGenerator.apply(this.host, Utils.Crypto.getSecureRandomString());
+			if (isClusterTopology())
+				newValue = String.format("{%s}", newValue);
+			var newStatValue = StatValue.build(newValue);
 			var rfuture = this.redisClient.getBucket(this.getStorageKey(), KEY_PREFIX_VALUE_STORE_CODEC)
 					.setAsync(newStatValue);
 			return RedissonUtils.asListenableFuture(rfuture).map(nil -> newStatValue);
 		});
 	}
 
+	private static boolean isClusterTopology() {
+		return StorageRedisTopology.CLUSTER.equals(Configs.get(PGBouncerAppConfig.class).storageRedisTopology());
+	}
+
+	// redis hashes the text between the first { and the next }, provided it is not empty
+	static boolean isHashTagged(String value) {
+		var start = value.indexOf('{');
+		return start >= 0 && value.indexOf('}', start + 1) > start + 1;
+	}
+
 	@SuppressWarnings("unchecked")
 	private ListenableFuture<StatValue<String>> getCurrentValue() {
 		var rfuture = this.redisClient.getBucket(this.getStorageKey(), KEY_PREFIX_VALUE_STORE_CODEC).getAsync();
 		return RedissonUtils.asListenableFuture(rfuture).map(obj -> {
 			StatValue<String> sv = (StatValue<String>) obj;
-			if (sv == null)
-				return null;
-			if (Utils.Strings.isBlank(sv.getValue()))
-				return null;
-			if (sv.getCreatedAt() == null)
-				return null;
-			var refreshBefore = Configs.get(PGBouncerAppConfig.class).storageKeyPrefixRefreshBefore();
-			if (refreshBefore != null && sv.getCreatedAt().before(refreshBefore))
-				return null;
-			return sv;
+			return isValid(sv) ? sv : null;
 		});
 	}
 
+	private static boolean isValid(StatValue<String> sv) {
+		if (sv == null)
+			return false;
+		if (Utils.Strings.isBlank(sv.getValue()))
+			return false;
+		if (sv.getCreatedAt() == null)
+			return false;
+		var refreshBefore = Configs.get(PGBouncerAppConfig.class).storageKeyPrefixRefreshBefore();
+		if (refreshBefore != null && sv.getCreatedAt().before(refreshBefore))
+			return false;
+		return true;
+	}
+
 }
@@ -1,12 +1,27 @@
 package com.lfp.pgbouncer_app.storage;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import org.redisson.Redisson;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RScript.Mode;
+import org.redisson.api.RScript.ReturnType;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.BaseMasterSlaveServersConfig;
+import org.redisson.config.Config;
+import org.redisson.config.ReadMode;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.lfp.data.redis.RedisConfig;
-import com.lfp.data.redisson.client.RedissonClientLFP;
 import com.lfp.data.redisson.client.RedissonClients;
 import com.lfp.joe.core.classpath.Instances;
 import com.lfp.joe.core.function.Scrapable;
@@ -15,6 +30,7 @@ import com.lfp.joe.net.http.uri.URIs;
 import com.lfp.joe.utils.Utils;
 import com.lfp.pgbouncer.service.config.PGBouncerServiceConfig;
 import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.config.StorageRedisTopology;
 import com.lfp.pgbouncer_app.storage.StorageCrypto.DecryptException;
 
 import io.mikael.urlbuilder.UrlBuilder;
@@ -40,31 +56,80 @@ public class RedisService extends Scrapable.Impl {
 	private static final Class<?> THIS_CLASS = new Object() {
 	}.getClass().getEnclosingClass();
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final int KEYSPACE_DATABASE = 0;
+	private static final String DIGEST_SCAN_END = "0";
+	private static final String DIGEST_SCRIPT = String.join("\n", //
+			"local result = redis.call('SCAN', ARGV[1], 'MATCH', ARGV[2], 'COUNT', ARGV[3])", //
+			"local entries = { result[1] }", //
+			"for _, key in ipairs(result[2]) do", //
+			"  local value = redis.pcall('GET', key)", //
+			"  if type(value) == 'string' then", //
+			"    table.insert(entries, key)", //
+			"    table.insert(entries, tostring(string.len(value)))", //
+			"    table.insert(entries, redis.sha1hex(value))", //
+			"  end", //
+			"end", //
+			"return entries");
 
 	private final URI uri;
-	private final RedissonClientLFP client;
+	private final RedissonClient client;
+	private final RedissonClient readClient;
+	private final KeyPrefixService keyPrefixService;
 	private final String keyPrefix;
 	private final StorageCrypto storageCrypto;
+	private final StorageCryptoCache storageCryptoCache;
 
 	public RedisService(String addressHost, URI redisURI, StorageCrypto storageCrypto) {
 		this.uri = Objects.requireNonNull(redisURI);
-		this.client = RedissonClients.get(RedisConfig.fromURIs(this.uri));
-		this.keyPrefix = new KeyPrefixService(this.client, addressHost).getKeyPrefix();
+		var cfg = Configs.get(PGBouncerAppConfig.class);
+		var topology = cfg.storageRedisTopology();
+		var uris = Utils.Lots.stream(cfg.storageRedisURIs()).nonNull().prepend(this.uri).distinct().toList();
+		if (StorageRedisTopology.MASTER_REPLICA.equals(topology) && uris.size() < 2) {
+			logger.warn("replica uris required for topology:{}", topology);
+			topology = StorageRedisTopology.SINGLE;
+		}
+		if (topology == null || StorageRedisTopology.SINGLE.equals(topology)) {
+			this.client = RedissonClients.get(RedisConfig.fromURIs(this.uri));
+			this.readClient = this.client;
+		} else {
+			// both clients see the whole topology, writes and keyspace subscriptions included
+			var client = Redisson.create(createConfig(topology, uris, ReadMode.MASTER));
+			this.onScrap(client::shutdown);
+			this.client = client;
+			var readMode = cfg.storageRedisReadMode();
+			if (readMode == null || ReadMode.MASTER.equals(readMode))
+				this.readClient = this.client;
+			else {
+				var readClient = Redisson.create(createConfig(topology, uris, readMode));
+				this.onScrap(readClient::shutdown);
+				this.readClient = readClient;
+			}
+			logger.info("storage clients created. topology:{} readMode:{} nodes:{}", topology, readMode,
+					uris.size());
+		}
+		this.keyPrefixService = new KeyPrefixService(this.client, addressHost);
+		this.keyPrefix = this.keyPrefixService.getKeyPrefix();
 		this.storageCrypto = storageCrypto;
+		this.storageCryptoCache = storageCrypto == null ? null
+				: new StorageCryptoCache(storageCrypto, cfg.storageDecryptCacheMaximumSize());
 	}
 
 	public Optional<StorageCrypto> getStorageCrypto() {
-		return Optional.of(storageCrypto);
+		return Optional.fromNullable(storageCrypto);
 	}
 
 	public URI getURI() {
 		return uri;
 	}
 
-	public RedissonClientLFP getClient() {
+	public RedissonClient getClient() {
 		return client;
 	}
 
+	public RedissonClient getReadClient() {
+		return readClient;
+	}
+
 	public boolean isTlsEnabled() {
 		var scheme = getURI().getScheme();
 		if (Utils.Strings.equalsIgnoreCase(scheme, "rediss"))
@@ -76,21 +141,165 @@ public class RedisService extends Scrapable.Impl {
 		return keyPrefix;
 	}
 
+	public KeyPrefixService getKeyPrefixService() {
+		return keyPrefixService;
+	}
+
 	public StreamEx<StorageReader> streamReaders() {
-		return streamReaders();
+		return streamReaders(null);
 	}
 
 	public StreamEx<StorageReader> streamReaders(
-			BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler) {
-		var keysByPattern = this.client.getKeys().getKeysByPattern(keyPrefix + "*");
-		var readerStream = Utils.Lots.stream(keysByPattern).map(key -> {
-			var blder = StorageReader.builder().client(client).storageCrypto(storageCrypto).keyPrefix(keyPrefix)
-					.key(key);
-			if (decryptErrorHandler != null)
-				blder.decryptErrorHandler(decryptErrorHandler);
-			return blder.build();
+			BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler, String... pathParts) {
+		return streamReaderPages(decryptErrorHandler, pathParts).flatCollection(v -> v);
+	}
+
+	public StreamEx<List<StorageReader>> streamReaderPages(
+			BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler, String... pathParts) {
+		var pageSize = Math.max(1, Configs.get(PGBouncerAppConfig.class).storageScanPageSize());
+		var keys = this.readClient.getKeys().getKeysByPattern(createKeyPattern(pathParts), pageSize);
+		var pageIterator = Iterators.partition(keys.iterator(), pageSize);
+		return StreamEx.of(pageIterator).map(page -> {
+			var storageReaders = StreamEx.of(page).map(key -> createReader(key, decryptErrorHandler)).toList();
+			return load(storageReaders);
+		});
+	}
+
+	public StreamEx<List<StorageDigest>> streamDigestPages(String... pathParts) {
+		var pageSize = Math.max(1, Configs.get(PGBouncerAppConfig.class).storageScanPageSize());
+		var keyPattern = createKeyPattern(pathParts);
+		var script = this.readClient.getScript(StringCodec.INSTANCE);
+		var pageIterator = new AbstractIterator<List<StorageDigest>>() {
+
+			private String cursor;
+
+			@Override
+			protected List<StorageDigest> computeNext() {
+				if (DIGEST_SCAN_END.equals(cursor))
+					return endOfData();
+				List<Object> result = script.eval(Mode.READ_ONLY, DIGEST_SCRIPT, ReturnType.MULTI,
+						List.of(keyPrefix), cursor == null ? DIGEST_SCAN_END : cursor, keyPattern,
+						Objects.toString(pageSize));
+				cursor = Objects.toString(result.get(0));
+				var page = new ArrayList<StorageDigest>((result.size() - 1) / 3);
+				for (int i = 1; i + 2 < result.size(); i += 3) {
+					var key = Objects.toString(result.get(i));
+					var length = Long.parseLong(Objects.toString(result.get(i + 1)));
+					var digest = Objects.toString(result.get(i + 2));
+					page.add(new StorageDigest(key, length, digest));
+				}
+				return page;
+			}
+		};
+		return StreamEx.of(pageIterator);
+	}
+
+	public <U extends Iterable<StorageReader>> U load(U storageReaders) {
+		var unloaded = Utils.Lots.stream(storageReaders).nonNull().remove(StorageReader::isLoaded).toList();
+		if (unloaded.isEmpty())
+			return storageReaders;
+		var batch = this.readClient.createBatch(BatchOptions.defaults());
+		for (var storageReader : unloaded)
+			batch.getBucket(storageReader.getKey(), ByteArrayCodec.INSTANCE).getAsync();
+		var responses = batch.execute().getResponses();
+		var encryptedList = new ArrayList<byte[]>(unloaded.size());
+		for (int i = 0; i < unloaded.size(); i++)
+			encryptedList.add(i < responses.size() ? (byte[]) responses.get(i) : null);
+		if (storageCryptoCache == null) {
+			for (int i = 0; i < unloaded.size(); i++)
+				unloaded.get(i).load(encryptedList.get(i));
+			return storageReaders;
+		}
+		var keys = StreamEx.of(unloaded).map(StorageReader::getKey).toList();
+		var decryptedList = storageCryptoCache.decryptAll(keys, encryptedList, (index, error) -> {
+			var encrypted = encryptedList.get(index);
+			if (encrypted == null || encrypted.length == 0)
+				return null;
+			var storageReader = unloaded.get(index);
+			return storageReader.getDecryptErrorHandler().apply(storageReader, error);
+		});
+		for (int i = 0; i < unloaded.size(); i++) {
+			var decrypted = decryptedList.get(i);
+			unloaded.get(i).loadDecrypted(decrypted == null ? null : Utils.Bits.from(decrypted));
+		}
+		return storageReaders;
+	}
+
+	public Scrapable addKeyspaceListener(Consumer<StorageReader> listener, String... pathParts) {
+		Objects.requireNonNull(listener);
+		var channelPrefix = String.format("__keyspace@%s__:", KEYSPACE_DATABASE);
+		var topic = this.client.getPatternTopic(channelPrefix + createKeyPattern(pathParts), StringCodec.INSTANCE);
+		var listenerId = topic.addListener(String.class, (pattern, channel, event) -> {
+			var key = Utils.Strings.substringAfter(Objects.toString(channel), channelPrefix);
+			if (Utils.Strings.isBlank(key))
+				return;
+			try {
+				listener.accept(createReader(key, null));
+			} catch (Throwable t) {
+				if (!Utils.Exceptions.isCancelException(t))
+					logger.warn("keyspace listener error. key:{} event:{}", key, event, t);
+			}
 		});
-		return readerStream;
+		logger.info("keyspace notifications subscribed:{}", topic.getPatternNames());
+		return Scrapable.create(() -> topic.removeListener(listenerId));
+	}
+
+	protected StorageReader createReader(String key,
+			BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler) {
+		var blder = StorageReader.builder().client(readClient).storageCrypto(storageCrypto).keyPrefix(keyPrefix)
+				.key(key);
+		if (decryptErrorHandler != null)
+			blder.decryptErrorHandler(decryptErrorHandler);
+		return blder.build();
+	}
+
+	protected String createKeyPattern(String... pathParts) {
+		var pattern = new StringBuilder(escapeKeyPattern(keyPrefix));
+		var pathPartList = Utils.Lots.stream(pathParts).filter(Utils.Strings::isNotBlank).toList();
+		for (var pathPart : pathPartList)
+			pattern.append("/").append(escapeKeyPattern(pathPart));
+		if (!pathPartList.isEmpty())
+			pattern.append("/");
+		return pattern.append("*").toString();
+	}
+
+	protected static Config createConfig(StorageRedisTopology topology, List<URI> uris, ReadMode readMode) {
+		var config = new Config();
+		BaseMasterSlaveServersConfig<?> serverConfig;
+		if (StorageRedisTopology.CLUSTER.equals(topology)) {
+			var clusterConfig = config.useClusterServers();
+			uris.forEach(v -> clusterConfig.addNodeAddress(toAddress(v)));
+			serverConfig = clusterConfig;
+		} else {
+			var masterSlaveConfig = config.useMasterSlaveServers();
+			masterSlaveConfig.setMasterAddress(toAddress(uris.get(0)));
+			uris.stream().skip(1).forEach(v -> masterSlaveConfig.addSlaveAddress(toAddress(v)));
+			serverConfig = masterSlaveConfig;
+		}
+		serverConfig.setReadMode(readMode);
+		var creds = URIs.parseCredentials(uris.get(0));
+		if (creds != null) {
+			// redis 6 acl users authenticate with both parts
+			serverConfig.setUsername(Utils.Strings.trimToNull(creds.getKey()));
+			serverConfig.setPassword(creds.getValue().filter(Utils.Strings::isNotBlank).orElse(null));
+		}
+		return config;
+	}
+
+	private static String toAddress(URI uri) {
+		var secure = Utils.Strings.equalsIgnoreCase(uri.getScheme(), "rediss") || URIs.isSecure(uri);
+		var port = uri.getPort() < 0 ? 6379 : uri.getPort();
+		return String.format("%s://%s:%s", secure ? "rediss" : "redis", uri.getHost(), port);
+	}
+
+	private static String escapeKeyPattern(String value) {
+		var sb = new StringBuilder(value.length());
+		for (var c : value.toCharArray()) {
+			if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\')
+				sb.append('\\');
+			sb.append(c);
+		}
+		return sb.toString();
 	}
 
 }
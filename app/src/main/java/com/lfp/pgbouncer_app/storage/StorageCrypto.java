@@ -2,8 +2,16 @@ package com.lfp.pgbouncer_app.storage;
 
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
@@ -16,6 +24,8 @@ import com.lfp.joe.utils.Utils;
 import com.lfp.joe.utils.function.Requires;
 import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
 
+import at.favre.lib.bytes.Bytes;
+
 public class StorageCrypto {
 
 	public static Optional<StorageCrypto> tryGet() {
@@ -29,18 +39,30 @@ public class StorageCrypto {
 
 	private final static int GCM_IV_LENGTH = 12;
 	private final static int GCM_TAG_LENGTH = 16;
+	private final static String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+	private final static int DECRYPT_ALL_PARALLEL_THRESHOLD = 8;
+	private final static SecureRandom SECURE_RANDOM = new SecureRandom();
+	private final static ForkJoinPool DECRYPT_POOL = new ForkJoinPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors()));
 	private final String aesSecret;
+	private final SecretKeySpec secretKey;
+	private final ThreadLocal<Cipher> cipherPool = ThreadLocal.withInitial(() -> {
+		try {
+			return Cipher.getInstance(CIPHER_TRANSFORMATION);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	});
 
 	public StorageCrypto(String aesSecret) {
 		this.aesSecret = Requires.notBlank(aesSecret);
+		this.secretKey = new SecretKeySpec(aesSecret.getBytes(StandardCharsets.UTF_8), "AES");
 	}
 
 	public byte[] decrypt(byte[] encrypted) throws DecryptException {
 		try {
-			byte[] iv = Arrays.copyOfRange(encrypted, 0, GCM_IV_LENGTH);
-			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-			GCMParameterSpec ivSpec = new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, iv);
-			var secretKey = new SecretKeySpec(aesSecret.getBytes(StandardCharsets.UTF_8), "AES");
+			Cipher cipher = cipherPool.get();
+			GCMParameterSpec ivSpec = new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, encrypted, 0, GCM_IV_LENGTH);
 			cipher.init(Cipher.DECRYPT_MODE, secretKey, ivSpec);
 			return cipher.doFinal(encrypted, GCM_IV_LENGTH, encrypted.length - GCM_IV_LENGTH);
 		} catch (Throwable t) {
@@ -48,6 +70,36 @@ public class StorageCrypto {
 		}
 	}
 
+	public List<byte[]> decryptAll(List<byte[]> encryptedList,
+			BiFunction<Integer, DecryptException, byte[]> decryptErrorHandler) {
+		var size = encryptedList == null ? 0 : encryptedList.size();
+		var decryptedArr = new byte[size][];
+		IntConsumer decryptTask = index -> {
+			try {
+				decryptedArr[index] = decrypt(encryptedList.get(index));
+			} catch (DecryptException e) {
+				decryptedArr[index] = decryptErrorHandler == null ? null : decryptErrorHandler.apply(index, e);
+			}
+		};
+		if (size < DECRYPT_ALL_PARALLEL_THRESHOLD)
+			IntStream.range(0, size).forEach(decryptTask);
+		else
+			DECRYPT_POOL.submit(() -> IntStream.range(0, size).parallel().forEach(decryptTask)).join();
+		return Arrays.asList(decryptedArr);
+	}
+
+	public byte[] encrypt(byte[] decrypted) throws GeneralSecurityException {
+		Cipher cipher = cipherPool.get();
+		byte[] iv = new byte[GCM_IV_LENGTH];
+		SECURE_RANDOM.nextBytes(iv);
+		GCMParameterSpec ivSpec = new GCMParameterSpec(GCM_TAG_LENGTH * Byte.SIZE, iv);
+		cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
+		byte[] encrypted = new byte[GCM_IV_LENGTH + cipher.getOutputSize(decrypted.length)];
+		System.arraycopy(iv, 0, encrypted, 0, GCM_IV_LENGTH);
+		cipher.doFinal(decrypted, 0, decrypted.length, encrypted, GCM_IV_LENGTH);
+		return encrypted;
+	}
+
 	public Optional<byte[]> tryDecrypt(byte[] encrypted) {
 		Asserts.isTrue(encrypted != null && encrypted.length > 0, ctx -> ctx.exceptionArguments("bytes required"));
 		try {
@@ -61,6 +113,19 @@ public class StorageCrypto {
 		return aesSecret;
 	}
 
+	/**
+	 * sha-1 of the ciphertext, the same digest the storage digest script computes server side
+	 */
+	public static Bytes fingerprint(byte[] encrypted) {
+		if (encrypted == null)
+			return Utils.Bits.empty();
+		try {
+			return Utils.Bits.from(MessageDigest.getInstance("SHA-1").digest(encrypted));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	@SuppressWarnings("serial")
 	public static class DecryptException extends GeneralSecurityException {
 
@@ -71,10 +136,19 @@ public class StorageCrypto {
 			this.cipher = cipher;
 		}
 
+		public DecryptException(byte[] cipher, String message) {
+			super(message);
+			this.cipher = cipher;
+		}
+
 		public byte[] getCipher() {
 			return cipher;
 		}
 
+		public Bytes getFingerprint() {
+			return fingerprint(cipher);
+		}
+
 	}
 
 }
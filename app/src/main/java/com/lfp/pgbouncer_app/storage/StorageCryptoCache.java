@@ -0,0 +1,110 @@
+package com.lfp.pgbouncer_app.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lfp.pgbouncer_app.storage.StorageCrypto.DecryptException;
+
+import at.favre.lib.bytes.Bytes;
+
+public class StorageCryptoCache {
+
+	private final StorageCrypto storageCrypto;
+	private final Cache<CacheKey, Object> cache;
+
+	public StorageCryptoCache(StorageCrypto storageCrypto, long maximumSize) {
+		this.storageCrypto = Objects.requireNonNull(storageCrypto);
+		this.cache = Caffeine.newBuilder().maximumSize(maximumSize).build();
+	}
+
+	public StorageCrypto getStorageCrypto() {
+		return storageCrypto;
+	}
+
+	public List<byte[]> decryptAll(List<String> keys, List<byte[]> encryptedList,
+			BiFunction<Integer, DecryptException, byte[]> decryptErrorHandler) {
+		var size = encryptedList.size();
+		var decryptedArr = new byte[size][];
+		var cacheKeys = new CacheKey[size];
+		var missIndexes = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++) {
+			cacheKeys[i] = new CacheKey(keys.get(i), StorageCrypto.fingerprint(encryptedList.get(i)));
+			var cached = cache.getIfPresent(cacheKeys[i]);
+			if (cached instanceof byte[])
+				decryptedArr[i] = (byte[]) cached;
+			else if (cached instanceof DecryptFailure) {
+				var error = new DecryptException(encryptedList.get(i), ((DecryptFailure) cached).message);
+				decryptedArr[i] = applyDecryptErrorHandler(decryptErrorHandler, i, error);
+			} else
+				missIndexes.add(i);
+		}
+		if (!missIndexes.isEmpty()) {
+			var failed = new boolean[size];
+			var missEncryptedList = new ArrayList<byte[]>(missIndexes.size());
+			for (var index : missIndexes)
+				missEncryptedList.add(encryptedList.get(index));
+			var missDecryptedList = storageCrypto.decryptAll(missEncryptedList, (missIndex, error) -> {
+				var index = missIndexes.get(missIndex);
+				failed[index] = true;
+				if (encryptedList.get(index) != null)
+					cache.put(cacheKeys[index], new DecryptFailure(error.getMessage()));
+				return applyDecryptErrorHandler(decryptErrorHandler, index, error);
+			});
+			for (int i = 0; i < missIndexes.size(); i++) {
+				var index = missIndexes.get(i);
+				var decrypted = missDecryptedList.get(i);
+				if (!failed[index] && decrypted != null)
+					cache.put(cacheKeys[index], decrypted);
+				decryptedArr[index] = decrypted;
+			}
+		}
+		return Arrays.asList(decryptedArr);
+	}
+
+	private static byte[] applyDecryptErrorHandler(BiFunction<Integer, DecryptException, byte[]> decryptErrorHandler,
+			int index, DecryptException error) {
+		return decryptErrorHandler == null ? null : decryptErrorHandler.apply(index, error);
+	}
+
+	// the exception would keep the ciphertext and a stack trace alive, only the message is needed again
+	private static class DecryptFailure {
+
+		private final String message;
+
+		public DecryptFailure(String message) {
+			this.message = message;
+		}
+	}
+
+	private static class CacheKey {
+
+		private final String key;
+		private final Bytes fingerprint;
+
+		public CacheKey(String key, Bytes fingerprint) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(key, fingerprint);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			return Objects.equals(key, other.key) && Objects.equals(fingerprint, other.fingerprint);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.lfp.pgbouncer_app.storage;
+
+import java.util.Objects;
+
+import com.lfp.joe.utils.function.Requires;
+
+public class StorageDigest {
+
+	private final String key;
+	private final long length;
+	private final String digest;
+
+	public StorageDigest(String key, long length, String digest) {
+		this.key = Requires.notBlank(key);
+		this.length = length;
+		this.digest = Requires.notBlank(digest);
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public String getDigest() {
+		return digest;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(key, length, digest);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		StorageDigest other = (StorageDigest) obj;
+		return Objects.equals(key, other.key) && length == other.length && Objects.equals(digest, other.digest);
+	}
+
+	@Override
+	public String toString() {
+		return "StorageDigest [key=" + key + ", length=" + length + ", digest=" + digest + "]";
+	}
+
+}
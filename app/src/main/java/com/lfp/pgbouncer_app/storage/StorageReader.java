@@ -20,18 +20,15 @@ import org.joda.beans.impl.direct.DirectFieldsBeanBuilder;
 import org.joda.beans.impl.direct.DirectMetaBean;
 import org.joda.beans.impl.direct.DirectMetaProperty;
 import org.joda.beans.impl.direct.DirectMetaPropertyMap;
+import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.ByteArrayCodec;
 
 import com.github.throwable.beanref.BeanRef;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
+import com.google.gson.JsonParseException;
 import com.google.re2j.Pattern;
-import com.lfp.data.redisson.client.RedissonClientLFP;
 import com.lfp.joe.beans.joda.JodaBeans;
-import com.lfp.joe.serial.Serials;
 import com.lfp.joe.utils.Utils;
 import com.lfp.joe.utils.crypto.Hashable;
-import com.lfp.joe.utils.time.TimeParser;
 import com.lfp.pgbouncer_app.storage.StorageCrypto.DecryptException;
 
 import at.favre.lib.bytes.Bytes;
@@ -43,7 +40,7 @@ public class StorageReader implements ImmutableBean, Hashable {
 	}.getClass().getEnclosingClass();
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
 	@PropertyDefinition(validate = "notNull")
-	private final RedissonClientLFP client;
+	private final RedissonClient client;
 
 	@PropertyDefinition(get = "optional")
 	private final StorageCrypto storageCrypto;
@@ -68,13 +65,44 @@ public class StorageReader implements ImmutableBean, Hashable {
 		if (_redisValue == null)
 			synchronized (this) {
 				if (_redisValue == null)
-					_redisValue = parseRedisValue();
+					_redisValue = parseRedisValue(fetchRedisValue());
 			}
 		return _redisValue;
 	}
 
-	private Bytes parseRedisValue() {
-		byte[] redisValueBarr = (byte[]) client.getBucket(getKey(), ByteArrayCodec.INSTANCE).get();
+	boolean isLoaded() {
+		return _redisValue != null;
+	}
+
+	boolean load(byte[] redisValueBarr) {
+		if (_redisValue != null)
+			return false;
+		synchronized (this) {
+			if (_redisValue != null)
+				return false;
+			_redisValue = parseRedisValue(redisValueBarr);
+			return true;
+		}
+	}
+
+	boolean loadDecrypted(Bytes redisValue) {
+		if (_redisValue != null)
+			return false;
+		synchronized (this) {
+			if (_redisValue != null)
+				return false;
+			_redisValue = redisValue == null ? Utils.Bits.empty() : redisValue;
+			return true;
+		}
+	}
+
+	private byte[] fetchRedisValue() {
+		return (byte[]) client.getBucket(getKey(), ByteArrayCodec.INSTANCE).get();
+	}
+
+	private Bytes parseRedisValue(byte[] redisValueBarr) {
+		if (redisValueBarr == null || redisValueBarr.length == 0)
+			return Utils.Bits.empty();
 		var crypto = getStorageCrypto().orElse(null);
 		if (crypto != null)
 			try {
@@ -86,47 +114,33 @@ public class StorageReader implements ImmutableBean, Hashable {
 		return Utils.Bits.from(redisValueBarr);
 	}
 
-	@SuppressWarnings("deprecation")
-	protected JsonElement getRedisValueJson() {
-		var json = getRedisValue().encodeUtf8();
-		if (Utils.Strings.isBlank(json))
-			return JsonNull.INSTANCE;
-		json = "{" + Utils.Strings.substringAfter(json, "{");
-		var je = Serials.Gsons.getJsonParser().parse(json);
-		return je;
-	}
-
-	private transient Bytes _value;
+	private transient StorageRecord _record;
 
-	public Bytes getValue() {
-		if (_value == null)
+	protected StorageRecord getRecord() {
+		if (_record == null)
 			synchronized (this) {
-				if (_value == null)
-					_value = parseValue();
+				if (_record == null)
+					_record = decodeRecord(getRedisValue());
 			}
-		return _value;
+		return _record;
 	}
 
-	private Bytes parseValue() {
-		var je = getRedisValueJson();
-		return Serials.Gsons.tryGetAsString(je, "value").map(Utils.Bits::parseBase64).orElse(Utils.Bits.empty());
+	// a corrupt record is treated as empty so it can't abort the update of the records around it
+	private StorageRecord decodeRecord(Bytes redisValue) {
+		try {
+			return StorageRecord.decode(redisValue);
+		} catch (JsonParseException e) {
+			logger.warn("failed to decode key value. key:{}", getKey(), e);
+			return StorageRecord.EMPTY;
+		}
 	}
 
-	private transient Optional<Date> _modified;
-
-	public Optional<Date> getModified() {
-		if (_modified == null)
-			synchronized (this) {
-				if (_modified == null)
-					_modified = parseModified();
-			}
-		return _modified;
+	public Bytes getValue() {
+		return getRecord().getValue();
 	}
 
-	private Optional<Date> parseModified() {
-		var je = getRedisValueJson();
-		var modifiedStr = Serials.Gsons.tryGetAsString(je, "modified").orElse(null);
-		return TimeParser.instance().tryParseDate(modifiedStr);
+	public Optional<Date> getModified() {
+		return getRecord().getModified();
 	}
 
 	@Override
@@ -257,7 +271,7 @@ public class StorageReader implements ImmutableBean, Hashable {
 	 * 
 	 * @return the value of the property, not null
 	 */
-	public RedissonClientLFP getClient() {
+	public RedissonClient getClient() {
 		return client;
 	}
 
@@ -349,8 +363,8 @@ public class StorageReader implements ImmutableBean, Hashable {
 		/**
 		 * The meta-property for the {@code client} property.
 		 */
-		private final MetaProperty<RedissonClientLFP> client = DirectMetaProperty.ofImmutable(this, "client",
-				StorageReader.class, RedissonClientLFP.class);
+		private final MetaProperty<RedissonClient> client = DirectMetaProperty.ofImmutable(this, "client",
+				StorageReader.class, RedissonClient.class);
 		/**
 		 * The meta-property for the {@code storageCrypto} property.
 		 */
@@ -422,7 +436,7 @@ public class StorageReader implements ImmutableBean, Hashable {
 		 * 
 		 * @return the meta-property, not null
 		 */
-		public final MetaProperty<RedissonClientLFP> client() {
+		public final MetaProperty<RedissonClient> client() {
 			return client;
 		}
 
@@ -497,7 +511,7 @@ public class StorageReader implements ImmutableBean, Hashable {
 	 */
 	public static class Builder extends DirectFieldsBeanBuilder<StorageReader> {
 
-		private RedissonClientLFP client;
+		private RedissonClient client;
 		private StorageCrypto storageCrypto;
 		private String keyPrefix;
 		private String key;
@@ -547,7 +561,7 @@ public class StorageReader implements ImmutableBean, Hashable {
 		public Builder set(String propertyName, Object newValue) {
 			switch (propertyName.hashCode()) {
 			case -1357712437: // client
-				this.client = (RedissonClientLFP) newValue;
+				this.client = (RedissonClient) newValue;
 				break;
 			case 1248401180: // storageCrypto
 				this.storageCrypto = (StorageCrypto) newValue;
@@ -615,7 +629,7 @@ public class StorageReader implements ImmutableBean, Hashable {
 		 * @param client the new value, not null
 		 * @return this, for chaining, not null
 		 */
-		public Builder client(RedissonClientLFP client) {
+		public Builder client(RedissonClient client) {
 			JodaBeanUtils.notNull(client, "client");
 			this.client = client;
 			return this;
@@ -0,0 +1,90 @@
+package com.lfp.pgbouncer_app.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+import org.redisson.client.RedisException;
+
+import com.lfp.joe.core.properties.Configs;
+import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.storage.StorageCrypto.DecryptException;
+
+public class StorageReaderSync {
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+
+	private final Map<String, SyncEntry> syncEntries = new HashMap<>();
+	private final RedisService redisService;
+	private final BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler;
+	private boolean digestErrorLogged;
+
+	public StorageReaderSync(RedisService redisService,
+			BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler) {
+		this.redisService = Objects.requireNonNull(redisService);
+		this.decryptErrorHandler = decryptErrorHandler;
+	}
+
+	public synchronized List<StorageReader> sync(String... pathParts) {
+		if (Configs.get(PGBouncerAppConfig.class).storageDigestSyncEnabled())
+			try {
+				return syncDigests(pathParts);
+			} catch (RedisException e) {
+				if (!digestErrorLogged) {
+					digestErrorLogged = true;
+					logger.warn("digest sync failed, falling back to full reads", e);
+				}
+			}
+		var storageReaders = redisService.streamReaderPages(decryptErrorHandler, pathParts).flatCollection(v -> v)
+				.toList();
+		syncEntries.keySet().removeIf(inScope(pathParts));
+		return storageReaders;
+	}
+
+	protected List<StorageReader> syncDigests(String... pathParts) {
+		var synced = new HashMap<String, SyncEntry>();
+		var storageReaders = new ArrayList<StorageReader>();
+		redisService.streamDigestPages(pathParts).forEach(page -> {
+			var changed = new ArrayList<StorageReader>();
+			for (var storageDigest : page) {
+				var syncEntry = syncEntries.get(storageDigest.getKey());
+				if (syncEntry == null || !syncEntry.storageDigest.equals(storageDigest)) {
+					var storageReader = redisService.createReader(storageDigest.getKey(), decryptErrorHandler);
+					syncEntry = new SyncEntry(storageDigest, storageReader);
+					changed.add(storageReader);
+				}
+				synced.put(storageDigest.getKey(), syncEntry);
+				storageReaders.add(syncEntry.storageReader);
+			}
+			redisService.load(changed);
+		});
+		syncEntries.keySet().removeIf(inScope(pathParts));
+		syncEntries.putAll(synced);
+		return storageReaders;
+	}
+
+	private Predicate<String> inScope(String... pathParts) {
+		var scopePrefix = Utils.Lots.stream(pathParts).filter(Utils.Strings::isNotBlank)
+				.prepend(redisService.getKeyPrefix()).joining("/") + "/";
+		return key -> Utils.Strings.startsWith(key, scopePrefix);
+	}
+
+	private static class SyncEntry {
+
+		private final StorageDigest storageDigest;
+		private final StorageReader storageReader;
+
+		public SyncEntry(StorageDigest storageDigest, StorageReader storageReader) {
+			this.storageDigest = storageDigest;
+			this.storageReader = storageReader;
+		}
+	}
+
+}
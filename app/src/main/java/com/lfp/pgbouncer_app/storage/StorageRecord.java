@@ -0,0 +1,80 @@
+package com.lfp.pgbouncer_app.storage;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.lfp.joe.utils.Utils;
+import com.lfp.joe.utils.time.TimeParser;
+
+import at.favre.lib.bytes.Bytes;
+
+public class StorageRecord {
+
+	public static final StorageRecord EMPTY = new StorageRecord(Utils.Bits.empty(), Optional.empty());
+
+	private static final String VALUE_NAME = "value";
+	private static final String MODIFIED_NAME = "modified";
+
+	private final Bytes value;
+	private final Optional<Date> modified;
+
+	public StorageRecord(Bytes value, Optional<Date> modified) {
+		this.value = value == null ? Utils.Bits.empty() : value;
+		this.modified = modified == null ? Optional.empty() : modified;
+	}
+
+	public Bytes getValue() {
+		return value;
+	}
+
+	public Optional<Date> getModified() {
+		return modified;
+	}
+
+	public static StorageRecord decode(Bytes redisValue) {
+		if (redisValue == null || redisValue.isEmpty())
+			return EMPTY;
+		var offset = redisValue.indexOf((byte) '{');
+		if (offset < 0)
+			return EMPTY;
+		try (var is = redisValue.inputStream();
+				var reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+			is.skip(offset);
+			reader.setLenient(true);
+			if (reader.peek() != JsonToken.BEGIN_OBJECT)
+				return EMPTY;
+			Bytes value = null;
+			Optional<Date> modified = null;
+			reader.beginObject();
+			while (reader.hasNext() && (value == null || modified == null)) {
+				var name = reader.nextName();
+				if (VALUE_NAME.equals(name))
+					value = nextString(reader).map(v -> Utils.Bits.from(Base64.getDecoder().decode(v)))
+							.orElseGet(Utils.Bits::empty);
+				else if (MODIFIED_NAME.equals(name))
+					modified = nextString(reader).flatMap(TimeParser.instance()::tryParseDate);
+				else
+					reader.skipValue();
+			}
+			return new StorageRecord(value, modified);
+		} catch (IOException | IllegalStateException | IllegalArgumentException e) {
+			throw new JsonParseException(e);
+		}
+	}
+
+	private static Optional<String> nextString(JsonReader reader) throws IOException {
+		var token = reader.peek();
+		if (token == JsonToken.STRING || token == JsonToken.NUMBER)
+			return Optional.of(reader.nextString());
+		reader.skipValue();
+		return Optional.empty();
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.lfp.pgbouncer_app.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+import com.lfp.joe.core.properties.Configs;
+import com.lfp.joe.serial.Serials;
+import com.lfp.joe.utils.Utils;
+import com.lfp.pgbouncer_app.config.PGBouncerAppConfig;
+import com.lfp.pgbouncer_app.storage.StorageCrypto.DecryptException;
+
+public class StorageSnapshot {
+
+	public static Optional<StorageSnapshot> tryCreate(RedisService redisService, String name) {
+		var cfg = Configs.get(PGBouncerAppConfig.class);
+		if (!cfg.certificateSnapshotEnabled())
+			return Optional.empty();
+		var storageCrypto = redisService.getStorageCrypto().orNull();
+		if (storageCrypto == null)
+			return Optional.empty();
+		var fileName = String.format("%s-%s.snapshot", name,
+				Utils.Crypto.hashMD5(redisService.getKeyPrefix()).encodeHex());
+		var file = new File(cfg.dataDirectory(), fileName);
+		return Optional.of(new StorageSnapshot(redisService, storageCrypto, file));
+	}
+
+	private static final Class<?> THIS_CLASS = new Object() {
+	}.getClass().getEnclosingClass();
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(THIS_CLASS);
+	private static final int VERSION = 1;
+
+	private final RedisService redisService;
+	private final StorageCrypto storageCrypto;
+	private final File file;
+
+	public StorageSnapshot(RedisService redisService, StorageCrypto storageCrypto, File file) {
+		this.redisService = Objects.requireNonNull(redisService);
+		this.storageCrypto = Objects.requireNonNull(storageCrypto);
+		this.file = Objects.requireNonNull(file);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public synchronized void write(Iterable<? extends StorageReader> storageReaders)
+			throws IOException, GeneralSecurityException {
+		var snapshot = new Snapshot();
+		snapshot.version = VERSION;
+		snapshot.keyPrefix = redisService.getKeyPrefix();
+		snapshot.entries = new ArrayList<>();
+		for (var storageReader : Utils.Lots.stream(storageReaders).nonNull().distinct()) {
+			var entry = new SnapshotEntry();
+			entry.key = storageReader.getKey();
+			entry.value = storageReader.getRedisValue().encodeBase64();
+			snapshot.entries.add(entry);
+		}
+		var json = Serials.Gsons.get().toJson(snapshot);
+		var encrypted = storageCrypto.encrypt(json.getBytes(StandardCharsets.UTF_8));
+		file.getParentFile().mkdirs();
+		var tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		Files.write(tempFile.toPath(), encrypted);
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public synchronized List<StorageReader> read(
+			BiFunction<StorageReader, DecryptException, byte[]> decryptErrorHandler) throws IOException {
+		if (!file.exists())
+			return List.of();
+		var encrypted = Files.readAllBytes(file.toPath());
+		byte[] decrypted;
+		try {
+			decrypted = storageCrypto.decrypt(encrypted);
+		} catch (DecryptException e) {
+			logger.warn("snapshot decrypt failed. file:{}", file.getAbsolutePath(), e);
+			return List.of();
+		}
+		var snapshot = Serials.Gsons.get().fromJson(new String(decrypted, StandardCharsets.UTF_8), Snapshot.class);
+		if (snapshot == null || snapshot.version != VERSION
+				|| !Objects.equals(snapshot.keyPrefix, redisService.getKeyPrefix()))
+			return List.of();
+		var storageReaders = new ArrayList<StorageReader>();
+		for (var entry : Utils.Lots.stream(snapshot.entries).nonNull()) {
+			if (Utils.Strings.isBlank(entry.key) || entry.value == null)
+				continue;
+			var storageReader = redisService.createReader(entry.key, decryptErrorHandler);
+			storageReader.loadDecrypted(Utils.Bits.parseBase64(entry.value));
+			storageReaders.add(storageReader);
+		}
+		return storageReaders;
+	}
+
+	private static class Snapshot {
+
+		private int version;
+
+		private String keyPrefix;
+
+		private List<SnapshotEntry> entries;
+	}
+
+	private static class SnapshotEntry {
+
+		private String key;
+
+		private String value;
+	}
+}
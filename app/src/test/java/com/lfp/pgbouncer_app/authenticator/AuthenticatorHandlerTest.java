@@ -0,0 +1,43 @@
+package com.lfp.pgbouncer_app.authenticator;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.lfp.pgbouncer_app.pgbouncer.PGBouncerAdminCredentials;
+
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+
+public class AuthenticatorHandlerTest {
+
+	private static final String ADMIN_USER = "postgres";
+	private static final String ADMIN_SECRET = "admin-secret";
+
+	private final AuthenticatorHandler handler = new AuthenticatorHandler(new SigningKeyResolverAdapter(),
+			new PGBouncerAdminCredentials(ADMIN_USER, ADMIN_SECRET));
+
+	@Test
+	public void adminSecretIsAccepted() {
+		assertTrue(handler.isAuthorized(List.of(ADMIN_USER + ":" + ADMIN_SECRET)));
+		assertTrue(handler.isAuthorized(List.of("not-a-jwt", ADMIN_USER + ":" + ADMIN_SECRET)));
+	}
+
+	// pam forwards no database, the secret is only as broad as a jwt for the admin user
+	@Test
+	public void adminSecretIsLimitedToAdminUser() {
+		assertFalse(handler.isAuthorized(List.of("app:" + ADMIN_SECRET)));
+		assertFalse(handler.isAuthorized(List.of(":" + ADMIN_SECRET)));
+		assertFalse(handler.isAuthorized(List.of(ADMIN_SECRET)));
+	}
+
+	@Test
+	public void wrongSecretIsRejected() {
+		assertFalse(handler.isAuthorized(List.of(ADMIN_USER + ":wrong")));
+		assertFalse(handler.isAuthorized(List.of(ADMIN_USER + ":")));
+		assertFalse(handler.isAuthorized(List.of()));
+	}
+
+}
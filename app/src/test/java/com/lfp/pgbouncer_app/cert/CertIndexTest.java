@@ -0,0 +1,98 @@
+package com.lfp.pgbouncer_app.cert;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+
+import com.lfp.pgbouncer_app.storage.StorageReader;
+
+import one.util.streamex.StreamEx;
+
+public class CertIndexTest {
+
+	private static final RedissonClient CLIENT = (RedissonClient) Proxy.newProxyInstance(
+			CertIndexTest.class.getClassLoader(), new Class<?>[] { RedissonClient.class }, (proxy, method, args) -> {
+				throw new UnsupportedOperationException(method.getName());
+			});
+
+	@Test
+	public void exactNameWinsOverWildcard() {
+		var wildcard = certStore("wildcard_.example.com", 2);
+		var exact = certStore("www.example.com", 1);
+		var certIndex = new CertIndex(1, List.of(wildcard, exact));
+		assertSame(exact, certIndex.lookup("www.example.com").get());
+		assertSame(wildcard, certIndex.lookup("api.example.com").get());
+	}
+
+	@Test
+	public void wildcardMatchesOneLabel() {
+		var wildcard = certStore("wildcard_.example.com", 1);
+		var certIndex = new CertIndex(1, List.of(wildcard));
+		assertSame(wildcard, certIndex.lookup("api.example.com").get());
+		assertTrue(certIndex.lookup("example.com").isEmpty());
+		assertTrue(certIndex.lookup("a.b.example.com").isEmpty());
+		assertTrue(certIndex.lookup("api.example.org").isEmpty());
+	}
+
+	@Test
+	public void newestCertStoreWins() {
+		var older = certStore("example.com", 1);
+		var newer = certStore("example.com", 2);
+		assertSame(newer, new CertIndex(1, List.of(older, newer)).lookup("example.com").get());
+		assertSame(newer, new CertIndex(1, List.of(newer, older)).lookup("example.com").get());
+	}
+
+	@Test
+	public void sansAreIndexed() {
+		var certStore = certStore("example.com", 1, "api.example.net", "*.example.org");
+		var certIndex = new CertIndex(1, List.of(certStore));
+		assertSame(certStore, certIndex.lookup("api.example.net").get());
+		assertSame(certStore, certIndex.lookup("www.example.org").get());
+		assertTrue(certIndex.lookup("www.example.net").isEmpty());
+	}
+
+	@Test
+	public void wildcardFolderMapsToWildcardName() {
+		var certStore = certStore("Wildcard_.Example.com", 1);
+		var certIndex = new CertIndex(1, List.of(certStore));
+		assertSame(certStore, certIndex.lookup("www.example.com").get());
+		assertSame(certStore, certIndex.lookup("*.example.com").get());
+		assertTrue(certIndex.lookup("example.com").isEmpty());
+	}
+
+	@Test
+	public void hostsAreNormalized() {
+		var certStore = certStore("example.com", 1);
+		var certIndex = new CertIndex(1, List.of(certStore));
+		assertSame(certStore, certIndex.lookup(" EXAMPLE.com. ").get());
+		assertTrue(certIndex.lookup("").isEmpty());
+		assertTrue(certIndex.lookup(null).isEmpty());
+	}
+
+	private static CertStore certStore(String domain, long modified, String... sans) {
+		var storageReader = StorageReader.builder().client(CLIENT).keyPrefix("").key(domain).build();
+		var builder = CertStore.builder();
+		builder.service("acme").domain(domain).name(domain);
+		builder.properties(storageReader).key(storageReader).cert(storageReader);
+		return new CertStore(builder) {
+
+			@Override
+			public Optional<Date> getModified() {
+				return Optional.of(new Date(modified));
+			}
+
+			@Override
+			public StreamEx<String> streamSans() {
+				return StreamEx.of(sans);
+			}
+		};
+	}
+
+}
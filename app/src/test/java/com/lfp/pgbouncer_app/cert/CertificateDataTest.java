@@ -0,0 +1,53 @@
+package com.lfp.pgbouncer_app.cert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.favre.lib.bytes.Bytes;
+
+public class CertificateDataTest {
+
+	// '=' in the middle of a block is rejected by the mime decoder
+	private static final String CORRUPT_PEM = "-----BEGIN %1$s-----\nMIIB=AAA\n-----END %1$s-----\n";
+
+	@Test
+	public void parsesGeneratedPair() {
+		var pair = DummyCertificate.generate("example.com", Duration.ofDays(1));
+		var certificateData = CertificateData.parse(pair.getValue(), pair.getKey());
+		assertEquals(1, certificateData.getCertificates().size());
+		assertTrue(certificateData.getPrivateKey().isPresent());
+	}
+
+	@Test
+	public void corruptPemParsesAsEmpty() {
+		var pair = DummyCertificate.generate("example.com", Duration.ofDays(1));
+		var corruptCert = pair.getValue().append(pem("CERTIFICATE"));
+		var certificateData = CertificateData.parse(corruptCert, pem("PRIVATE KEY"));
+		assertTrue(certificateData.getCertificates().isEmpty());
+		assertTrue(certificateData.getPrivateKey().isEmpty());
+	}
+
+	@Test
+	public void corruptDummyCertificateIsRegenerated(@TempDir Path directory) throws Exception {
+		var file = new File(directory.toFile(), "dummy-cert.pem");
+		Files.write(file.toPath(), pem("PRIVATE KEY").append(pem("CERTIFICATE")).array());
+		var pair = DummyCertificate.get(directory.toFile());
+		var certificateData = CertificateData.parse(pair.getValue(), pair.getKey());
+		assertEquals(1, certificateData.getCertificates().size());
+		assertTrue(certificateData.getPrivateKey().isPresent());
+	}
+
+	private static Bytes pem(String type) {
+		return Bytes.from(String.format(CORRUPT_PEM, type), StandardCharsets.US_ASCII);
+	}
+
+}
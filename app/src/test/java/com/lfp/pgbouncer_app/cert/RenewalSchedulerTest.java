@@ -0,0 +1,92 @@
+package com.lfp.pgbouncer_app.cert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class RenewalSchedulerTest {
+
+	private static final long MIN = Duration.ofSeconds(5).toMillis();
+	private static final long MAX = Duration.ofMinutes(1).toMillis();
+	private static final long WINDOW = Duration.ofMinutes(10).toMillis();
+	private static final long DAY = Duration.ofDays(1).toMillis();
+	// a 90 day certificate is expected to renew 60 days in
+	private static final long NOT_BEFORE = 0;
+	private static final long NOT_AFTER = 90 * DAY;
+	private static final long RENEWAL_AT = 60 * DAY;
+
+	private final RenewalScheduler scheduler = new RenewalScheduler(Duration.ofMillis(MIN), Duration.ofMillis(MAX),
+			Duration.ofMillis(WINDOW));
+
+	@Test
+	public void backsOffWithoutRenewals() {
+		assertEquals(MIN, scheduler.nextDelayMillis(false, 0));
+		assertEquals(2 * MIN, scheduler.nextDelayMillis(false, 0));
+		assertEquals(4 * MIN, scheduler.nextDelayMillis(false, 0));
+		assertEquals(8 * MIN, scheduler.nextDelayMillis(false, 0));
+		assertEquals(MAX, scheduler.nextDelayMillis(false, 0));
+		assertEquals(MAX, scheduler.nextDelayMillis(false, 0));
+	}
+
+	@Test
+	public void modificationResetsBackoff() {
+		scheduler.nextDelayMillis(false, 0);
+		scheduler.nextDelayMillis(false, 0);
+		assertEquals(MIN, scheduler.nextDelayMillis(true, 0));
+		assertEquals(2 * MIN, scheduler.nextDelayMillis(false, 0));
+	}
+
+	@Test
+	public void wakesAtTheStartOfTheRenewalWindow() {
+		scheduler.schedule(NOT_BEFORE, NOT_AFTER);
+		var now = RENEWAL_AT - WINDOW - 30_000;
+		assertEquals(MIN, scheduler.nextDelayMillis(false, now));
+		assertEquals(2 * MIN, scheduler.nextDelayMillis(false, now));
+		assertEquals(4 * MIN, scheduler.nextDelayMillis(false, now));
+		assertEquals(30_000, scheduler.nextDelayMillis(false, now));
+	}
+
+	@Test
+	public void pollsFastInsideTheRenewalWindow() {
+		scheduler.schedule(NOT_BEFORE, NOT_AFTER);
+		assertEquals(MIN, scheduler.nextDelayMillis(false, RENEWAL_AT - WINDOW));
+		assertEquals(MIN, scheduler.nextDelayMillis(false, RENEWAL_AT));
+		assertEquals(MIN, scheduler.nextDelayMillis(false, RENEWAL_AT + WINDOW - 1));
+	}
+
+	@Test
+	public void backsOffOnceTheRenewalWindowPasses() {
+		scheduler.schedule(NOT_BEFORE, NOT_AFTER);
+		var now = RENEWAL_AT + WINDOW;
+		assertEquals(MIN, scheduler.nextDelayMillis(false, now));
+		assertEquals(2 * MIN, scheduler.nextDelayMillis(false, now));
+		assertEquals(4 * MIN, scheduler.nextDelayMillis(false, now + DAY));
+	}
+
+	@Test
+	public void missedRenewalDoesNotHideTheNextOne() {
+		scheduler.schedule(NOT_BEFORE, NOT_AFTER);
+		scheduler.schedule(NOT_BEFORE + 30 * DAY, NOT_AFTER + 30 * DAY);
+		var now = RENEWAL_AT + 20 * DAY;
+		assertEquals(MIN, scheduler.nextDelayMillis(false, now));
+		assertEquals(2 * MIN, scheduler.nextDelayMillis(false, now));
+		assertEquals(MIN, scheduler.nextDelayMillis(false, RENEWAL_AT + 30 * DAY));
+	}
+
+	@Test
+	public void ignoresExpiredCertificates() {
+		scheduler.schedule(NOT_BEFORE, NOT_AFTER);
+		assertEquals(MIN, scheduler.nextDelayMillis(false, NOT_AFTER));
+		assertEquals(2 * MIN, scheduler.nextDelayMillis(false, NOT_AFTER));
+	}
+
+	@Test
+	public void ignoresCertificatesWithoutValidity() {
+		scheduler.schedule(-1, -1);
+		assertEquals(MIN, scheduler.nextDelayMillis(false, 0));
+		assertEquals(2 * MIN, scheduler.nextDelayMillis(false, 0));
+	}
+
+}
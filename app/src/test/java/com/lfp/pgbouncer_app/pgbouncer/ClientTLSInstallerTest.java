@@ -0,0 +1,83 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.favre.lib.bytes.Bytes;
+
+public class ClientTLSInstallerTest {
+
+	private static final Bytes KEY = Bytes.from("key-1", StandardCharsets.UTF_8);
+	private static final Bytes CERT = Bytes.from("cert-1", StandardCharsets.UTF_8);
+
+	@TempDir
+	Path directory;
+	private File keyFile;
+	private File certFile;
+	private String owner;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		keyFile = directory.resolve("conf/client.key").toFile();
+		certFile = directory.resolve("conf/client.cert").toFile();
+		owner = Files.getOwner(directory).getName();
+	}
+
+	@Test
+	public void installSetsOwnerAndMode() throws IOException {
+		var installer = new ClientTLSInstaller(keyFile, certFile, owner);
+		assertTrue(installer.install(KEY, CERT));
+		assertEquals(owner, Files.getOwner(keyFile.toPath()).getName());
+		assertEquals(owner, Files.getOwner(certFile.toPath()).getName());
+		assertEquals(ClientTLSInstaller.KEY_PERMISSIONS, Files.getPosixFilePermissions(keyFile.toPath()));
+		assertEquals(ClientTLSInstaller.CERT_PERMISSIONS, Files.getPosixFilePermissions(certFile.toPath()));
+		assertEquals(KEY, Bytes.wrap(Files.readAllBytes(keyFile.toPath())));
+		assertEquals(CERT, Bytes.wrap(Files.readAllBytes(certFile.toPath())));
+	}
+
+	@Test
+	public void replacedFileKeepsMode() throws IOException {
+		var installer = new ClientTLSInstaller(keyFile, certFile, owner);
+		installer.install(KEY, CERT);
+		var cert = Bytes.from("cert-2", StandardCharsets.UTF_8);
+		assertTrue(installer.install(KEY, cert));
+		assertEquals(ClientTLSInstaller.CERT_PERMISSIONS, Files.getPosixFilePermissions(certFile.toPath()));
+		assertEquals(List.of(cert, CERT), installer.getPinnedCertValues());
+		assertEquals(cert, Bytes.wrap(Files.readAllBytes(certFile.toPath())));
+	}
+
+	@Test
+	public void unchangedPairIsSkipped() throws IOException {
+		assertTrue(new ClientTLSInstaller(keyFile, certFile, owner).install(KEY, CERT));
+		// a fresh installer seeds its digests from disk
+		var installer = new ClientTLSInstaller(keyFile, certFile, owner);
+		assertFalse(installer.install(KEY, CERT));
+		assertEquals(List.of(CERT), installer.getPinnedCertValues());
+		assertFalse(installer.install(KEY, CERT));
+	}
+
+	@Test
+	public void noStagedFilesRemain() throws IOException {
+		var installer = new ClientTLSInstaller(keyFile, certFile, null);
+		installer.install(KEY, CERT);
+		try (var files = Files.list(keyFile.getParentFile().toPath())) {
+			assertEquals(2, files.count());
+		}
+	}
+
+}
@@ -0,0 +1,298 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.lfp.pgbouncer_app.pgbouncer.PGBouncerAdminClient.QueryException;
+
+import at.favre.lib.bytes.Bytes;
+
+/**
+ * replays canned server messages, see https://www.postgresql.org/docs/current/protocol-message-formats.html
+ */
+public class PGBouncerAdminClientProtocolTest {
+
+	private static final String USER = "postgres";
+	private static final String PASSWORD = "secret";
+
+	@Test
+	public void queryParsesRowsAndNulls() throws IOException {
+		var server = new Server().authOk().ready()
+				.rowDescription("database", "cl_active")
+				.dataRow("app", "3")
+				.dataRow("pgbouncer", null)
+				.commandComplete("SHOW")
+				.ready();
+		var client = new CannedClient(0, 1, server);
+		var result = client.query("SHOW POOLS");
+		assertEquals("SHOW", result.getCommandTag());
+		assertEquals(List.of("database", "cl_active"), result.getColumns());
+		assertEquals(Arrays.asList("app", "3"), result.getRows().get(0));
+		assertEquals(Arrays.asList("pgbouncer", null), result.getRows().get(1));
+		assertEquals("3", result.toMaps().get(0).get("cl_active"));
+		var messages = server.readClientMessages();
+		assertEquals("startup", messages.get(0).getKey());
+		assertEquals(Map.entry("Q", "SHOW POOLS\0"), messages.get(1));
+	}
+
+	@Test
+	public void errorResponseIsThrownAfterReady() throws IOException {
+		var server = new Server().authOk().ready()
+				.error("42601", "invalid command")
+				.ready()
+				.commandComplete("RELOAD")
+				.ready();
+		var client = new CannedClient(0, 1, server);
+		var error = assertThrows(QueryException.class, () -> client.query("BOGUS"));
+		assertEquals("42601 invalid command", error.getMessage());
+		// the connection stays usable after a query error
+		assertEquals("RELOAD", client.execute("RELOAD"));
+		assertEquals(1, client.opened);
+	}
+
+	@Test
+	public void startupErrorFailsConnect() {
+		var server = new Server().error("08P01", "no such user");
+		var client = new CannedClient(0, 1, server);
+		var error = assertThrows(QueryException.class, () -> client.query("SHOW POOLS"));
+		assertEquals("08P01 no such user", error.getMessage());
+		assertEquals(1, client.opened);
+	}
+
+	@Test
+	public void cleartextAuthenticationSendsPassword() throws IOException {
+		var server = new Server().authRequest(3, new byte[0]).authOk().ready().commandComplete("RELOAD").ready();
+		new CannedClient(0, 1, server).execute("RELOAD");
+		assertEquals(Map.entry("p", PASSWORD + "\0"), server.readClientMessages().get(1));
+	}
+
+	@Test
+	public void md5AuthenticationSendsSaltedDigest() throws Exception {
+		var salt = new byte[] { 1, 2, 3, 4 };
+		var server = new Server().authRequest(5, salt).authOk().ready().commandComplete("RELOAD").ready();
+		new CannedClient(0, 1, server).execute("RELOAD");
+		var inner = md5Hex((PASSWORD + USER).getBytes(StandardCharsets.UTF_8));
+		var expected = "md5" + md5Hex(Bytes.from(inner, StandardCharsets.US_ASCII).append(salt).array());
+		assertEquals(Map.entry("p", expected + "\0"), server.readClientMessages().get(1));
+	}
+
+	@Test
+	public void unsupportedAuthenticationFailsConnect() {
+		var server = new Server().authRequest(10, "SCRAM-SHA-256\0\0".getBytes(StandardCharsets.US_ASCII));
+		var client = new CannedClient(0, 1, server);
+		assertThrows(IOException.class, () -> client.query("SHOW POOLS"));
+	}
+
+	@Test
+	public void staleConnectionIsReopenedOnce() throws IOException {
+		// the first connection answers one query and then drops, like a restarted pgbouncer
+		var first = new Server().authOk().ready().commandComplete("RELOAD").ready();
+		var second = new Server().authOk().ready().commandComplete("PAUSE").ready();
+		var client = new CannedClient(0, 1, first, second);
+		assertEquals("RELOAD", client.execute("RELOAD"));
+		assertEquals("PAUSE", client.execute("PAUSE"));
+		assertEquals(2, client.opened);
+	}
+
+	@Test
+	public void failedFirstConnectIsNotRetried() {
+		var client = new CannedClient(0, 1, new Server(), new Server().authOk().ready());
+		assertThrows(EOFException.class, () -> client.query("SHOW POOLS"));
+		assertEquals(1, client.opened);
+	}
+
+	@Test
+	public void peerIsFoundByReconnecting() throws IOException {
+		var other = new Server().authOk().ready().config("peer_id", "2");
+		var peer = new Server().authOk().ready().config("peer_id", "1").commandComplete("RELOAD").ready();
+		var client = new CannedClient(1, 2, other, peer);
+		assertEquals("RELOAD", client.execute("RELOAD"));
+		assertEquals(2, client.opened);
+		assertTrue(other.closed);
+	}
+
+	private static String md5Hex(byte[] value) throws Exception {
+		return Bytes.wrap(MessageDigest.getInstance("MD5").digest(value)).encodeHex();
+	}
+
+	private static class CannedClient extends PGBouncerAdminClient {
+
+		private final Deque<Server> servers;
+		private int opened;
+
+		CannedClient(int peerId, int instances, Server... servers) {
+			super(new InetSocketAddress("127.0.0.1", 6432), USER, PASSWORD, Duration.ofSeconds(1), List::of, peerId,
+					instances);
+			this.servers = new ArrayDeque<>(List.of(servers));
+		}
+
+		@Override
+		protected Socket open() throws IOException {
+			var server = servers.poll();
+			if (server == null)
+				throw new IOException("no server left");
+			opened++;
+			return server.toSocket();
+		}
+	}
+
+	private static class Server {
+
+		private final ByteArrayOutputStream responses = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+		private boolean closed;
+
+		Server authOk() {
+			return authRequest(0, new byte[0]);
+		}
+
+		Server authRequest(int code, byte[] data) {
+			var body = new ByteArrayOutputStream();
+			writeInt(body, code);
+			body.writeBytes(data);
+			return message('R', body.toByteArray());
+		}
+
+		Server ready() {
+			return message('Z', new byte[] { 'I' });
+		}
+
+		Server rowDescription(String... names) {
+			var body = new ByteArrayOutputStream();
+			writeShort(body, names.length);
+			for (var name : names) {
+				writeCString(body, name);
+				// table oid, column, type oid, type size, type modifier and format
+				body.writeBytes(new byte[18]);
+			}
+			return message('T', body.toByteArray());
+		}
+
+		Server dataRow(String... values) {
+			var body = new ByteArrayOutputStream();
+			writeShort(body, values.length);
+			for (var value : values) {
+				if (value == null) {
+					writeInt(body, -1);
+					continue;
+				}
+				var bytes = value.getBytes(StandardCharsets.UTF_8);
+				writeInt(body, bytes.length);
+				body.writeBytes(bytes);
+			}
+			return message('D', body.toByteArray());
+		}
+
+		Server commandComplete(String tag) {
+			var body = new ByteArrayOutputStream();
+			writeCString(body, tag);
+			return message('C', body.toByteArray());
+		}
+
+		Server error(String code, String text) {
+			var body = new ByteArrayOutputStream();
+			body.write('S');
+			writeCString(body, "ERROR");
+			body.write('C');
+			writeCString(body, code);
+			body.write('M');
+			writeCString(body, text);
+			body.write(0);
+			return message('E', body.toByteArray());
+		}
+
+		Server config(String key, String value) {
+			return rowDescription("key", "value", "default", "changeable").dataRow(key, value, "0", "no")
+					.commandComplete("SHOW").ready();
+		}
+
+		private Server message(char type, byte[] body) {
+			responses.write(type);
+			writeInt(responses, body.length + 4);
+			responses.writeBytes(body);
+			return this;
+		}
+
+		Socket toSocket() {
+			var in = new ByteArrayInputStream(responses.toByteArray());
+			return new Socket() {
+
+				@Override
+				public InputStream getInputStream() {
+					return in;
+				}
+
+				@Override
+				public OutputStream getOutputStream() {
+					return requests;
+				}
+
+				@Override
+				public boolean isClosed() {
+					return closed;
+				}
+
+				@Override
+				public synchronized void close() {
+					closed = true;
+				}
+			};
+		}
+
+		// the startup message has no type byte, every later one does
+		List<Map.Entry<String, String>> readClientMessages() throws IOException {
+			var in = new DataInputStream(new ByteArrayInputStream(requests.toByteArray()));
+			var messages = new ArrayList<Map.Entry<String, String>>();
+			var startup = new byte[in.readInt() - 4];
+			in.readFully(startup);
+			messages.add(Map.entry("startup", new String(startup, StandardCharsets.UTF_8)));
+			while (in.available() > 0) {
+				var type = (char) in.readUnsignedByte();
+				var body = new byte[in.readInt() - 4];
+				in.readFully(body);
+				messages.add(Map.entry(String.valueOf(type), new String(body, StandardCharsets.UTF_8)));
+			}
+			return messages;
+		}
+
+		private static void writeInt(ByteArrayOutputStream out, int value) {
+			out.write(value >>> 24);
+			out.write(value >>> 16);
+			out.write(value >>> 8);
+			out.write(value);
+		}
+
+		private static void writeShort(ByteArrayOutputStream out, int value) {
+			out.write(value >>> 8);
+			out.write(value);
+		}
+
+		private static void writeCString(ByteArrayOutputStream out, String value) {
+			out.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+			out.write(0);
+		}
+	}
+
+}
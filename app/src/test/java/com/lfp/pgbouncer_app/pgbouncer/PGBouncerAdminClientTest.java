@@ -0,0 +1,56 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.lfp.pgbouncer_app.cert.CertificateData;
+import com.lfp.pgbouncer_app.cert.DummyCertificate;
+
+import at.favre.lib.bytes.Bytes;
+
+public class PGBouncerAdminClientTest {
+
+	private static final Bytes INSTALLED_CERT = DummyCertificate.generate("installed.test", Duration.ofDays(1))
+			.getValue();
+	private static final Bytes OTHER_CERT = DummyCertificate.generate("other.test", Duration.ofDays(1)).getValue();
+
+	@Test
+	public void pinnedTrustManagerAcceptsInstalledCertificate() throws Exception {
+		var trustManager = new PGBouncerAdminClient.PinnedTrustManager(List.of(OTHER_CERT, INSTALLED_CERT));
+		assertDoesNotThrow(() -> trustManager.checkServerTrusted(chain(INSTALLED_CERT), "ECDHE_ECDSA"));
+	}
+
+	@Test
+	public void pinnedTrustManagerRejectsOtherCertificate() throws Exception {
+		var trustManager = new PGBouncerAdminClient.PinnedTrustManager(List.of(INSTALLED_CERT));
+		assertThrows(CertificateException.class,
+				() -> trustManager.checkServerTrusted(chain(OTHER_CERT), "ECDHE_ECDSA"));
+	}
+
+	@Test
+	public void pinnedTrustManagerRejectsEverythingWithoutPins() throws Exception {
+		var trustManager = new PGBouncerAdminClient.PinnedTrustManager(List.of());
+		assertThrows(CertificateException.class,
+				() -> trustManager.checkServerTrusted(chain(INSTALLED_CERT), "ECDHE_ECDSA"));
+		assertThrows(CertificateException.class,
+				() -> trustManager.checkServerTrusted(new X509Certificate[0], "ECDHE_ECDSA"));
+	}
+
+	private static X509Certificate[] chain(Bytes certValue) throws Exception {
+		var certificate = CertificateData.parse(certValue, null).getCertificate().orElseThrow();
+		// a fresh instance, so the comparison is by encoding rather than identity
+		var copy = CertificateFactory.getInstance("X.509")
+				.generateCertificate(new ByteArrayInputStream(certificate.getEncoded()));
+		return new X509Certificate[] { (X509Certificate) copy };
+	}
+
+}
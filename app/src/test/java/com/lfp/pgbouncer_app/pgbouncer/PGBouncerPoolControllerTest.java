@@ -0,0 +1,92 @@
+package com.lfp.pgbouncer_app.pgbouncer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class PGBouncerPoolControllerTest {
+
+	@TempDir
+	Path directory;
+
+	public static Stream<Arguments> updateIniCases() {
+		return Stream.of(//
+				Arguments.of("plain entry", //
+						lines("[databases]", "app = host=db port=5432"), //
+						Map.of("app", 20), true, //
+						lines("[databases]", "app = host=db port=5432 pool_size=20 reserve_pool=5")),
+				Arguments.of("quoted name", //
+						lines("[databases]", "\"app db\" = host=db dbname=app"), //
+						Map.of("app db", 8), true, //
+						lines("[databases]", "\"app db\" = host=db dbname=app pool_size=8 reserve_pool=2")),
+				Arguments.of("quoted name with an escaped quote", //
+						lines("[databases]", "\"app\"\"db\" = host=db"), //
+						Map.of("app\"db", 8), true, //
+						lines("[databases]", "\"app\"\"db\" = host=db pool_size=8 reserve_pool=2")),
+				Arguments.of("existing pool size and reserve", //
+						lines("[databases]",
+								"  app = host=db pool_size=10 reserve_pool_size=3 max_db_connections=50"), //
+						Map.of("app", 12), true, //
+						lines("[databases]", "  app = host=db max_db_connections=50 pool_size=12 reserve_pool=3")),
+				Arguments.of("comments are kept", //
+						lines("[databases]", "; app = host=old", "# app = host=older", "app = host=db"), //
+						Map.of("app", 4), true, //
+						lines("[databases]", "; app = host=old", "# app = host=older",
+								"app = host=db pool_size=4 reserve_pool=1")),
+				Arguments.of("other sections are ignored", //
+						lines("[pgbouncer]", "app = 1", "[databases]", "app = host=db", "[users]",
+								"app = pool_mode=session"), //
+						Map.of("app", 4), true, //
+						lines("[pgbouncer]", "app = 1", "[databases]", "app = host=db pool_size=4 reserve_pool=1",
+								"[users]", "app = pool_mode=session")),
+				Arguments.of("wildcard without dbname", //
+						lines("[databases]", "* = host=db port=5432"), //
+						Map.of("app", 6), true, //
+						lines("[databases]", "app = host=db port=5432 dbname=app pool_size=6 reserve_pool=2",
+								"* = host=db port=5432")),
+				Arguments.of("wildcard with dbname", //
+						lines("[databases]", "* = host=db dbname=shared pool_size=2"), //
+						Map.of("app", 6), true, //
+						lines("[databases]", "app = host=db dbname=shared pool_size=6 reserve_pool=2",
+								"* = host=db dbname=shared pool_size=2")),
+				Arguments.of("wildcard with a name that needs quotes", //
+						lines("[databases]", "* = host=db"), //
+						Map.of("app db", 6), true, //
+						lines("[databases]", "\"app db\" = host=db dbname='app db' pool_size=6 reserve_pool=2",
+								"* = host=db")),
+				Arguments.of("unknown database without wildcard", //
+						lines("[databases]", "app = host=db"), //
+						Map.of("other", 6), false, //
+						lines("[databases]", "app = host=db")));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("updateIniCases")
+	public void updateIni(String name, String ini, Map<String, Integer> poolSizes, boolean updated, String expected)
+			throws IOException {
+		var iniFile = directory.resolve("pgbouncer.ini");
+		Files.writeString(iniFile, ini, StandardCharsets.UTF_8);
+		var reserveSizes = Map.<String, Integer>of();
+		if (!poolSizes.isEmpty()) {
+			var ent = poolSizes.entrySet().iterator().next();
+			reserveSizes = Map.of(ent.getKey(), (int) Math.ceil(ent.getValue() * 0.25));
+		}
+		assertEquals(updated, PGBouncerPoolController.updateIni(iniFile.toFile(), poolSizes, reserveSizes));
+		assertEquals(expected, Files.readString(iniFile, StandardCharsets.UTF_8));
+	}
+
+	private static String lines(String... lines) {
+		return String.join("\n", lines) + "\n";
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.lfp.pgbouncer_app.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class ProcessOutputReaderTest {
+
+	private static final int CAPACITY = 1024;
+
+	private final List<String> lines = new CopyOnWriteArrayList<>();
+	private final CountDownLatch firstLine = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	// the first line holds the drain, so later writes fill the buffer deterministically
+	private final ProcessOutputReader reader = new ProcessOutputReader(new ProcessLogSink("test"), line -> {
+		lines.add(line.toString());
+		firstLine.countDown();
+		await(release);
+	}, CAPACITY);
+
+	@Test
+	public void splitsLines() throws Exception {
+		release.countDown();
+		write("one\r\ntwo\n\nthr");
+		write("ee\nfour");
+		reader.close();
+		assertLines("one", "two", "three", "four");
+	}
+
+	@Test
+	public void dropDoesNotGlueLines() throws Exception {
+		holdDrain();
+		write("start");
+		write(chunk(4 * CAPACITY));
+		write("tail\nnext\n");
+		release.countDown();
+		reader.close();
+		assertLines("first", "start", "next");
+	}
+
+	@Test
+	public void dropOnLineBoundariesKeepsTheNextLine() throws Exception {
+		holdDrain();
+		write("done\n");
+		write(chunk(4 * CAPACITY) + "\n");
+		write("next\n");
+		release.countDown();
+		reader.close();
+		assertLines("first", "done", "next");
+	}
+
+	@Test
+	public void discardSpansWrites() throws Exception {
+		holdDrain();
+		write("start");
+		write(chunk(4 * CAPACITY));
+		write("more tail");
+		write(" tail\nnext\n");
+		release.countDown();
+		reader.close();
+		assertLines("first", "start", "next");
+	}
+
+	private void holdDrain() throws InterruptedException {
+		write("first\n");
+		assertTrue(firstLine.await(5, TimeUnit.SECONDS));
+	}
+
+	private void write(String value) {
+		var bytes = value.getBytes(StandardCharsets.UTF_8);
+		reader.write(bytes, 0, bytes.length);
+	}
+
+	private void assertLines(String... expected) throws InterruptedException {
+		var timeoutAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (lines.size() < expected.length && System.nanoTime() < timeoutAt)
+			Thread.sleep(10);
+		// give a wrongly split line the chance to show up
+		Thread.sleep(50);
+		assertEquals(Arrays.asList(expected), lines);
+	}
+
+	private static String chunk(int length) {
+		return "x".repeat(length);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.lfp.pgbouncer_app.storage;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class KeyPrefixServiceTest {
+
+	@Test
+	public void hashTaggedPrefixes() {
+		assertTrue(KeyPrefixService.isHashTagged("{certs}"));
+		assertTrue(KeyPrefixService.isHashTagged("app:{certs}:v1"));
+		assertTrue(KeyPrefixService.isHashTagged("a}{b}"));
+	}
+
+	@Test
+	public void untaggedPrefixes() {
+		assertFalse(KeyPrefixService.isHashTagged("certs"));
+		assertFalse(KeyPrefixService.isHashTagged("{}certs"));
+		assertFalse(KeyPrefixService.isHashTagged("{certs"));
+		assertFalse(KeyPrefixService.isHashTagged("certs}"));
+	}
+
+}
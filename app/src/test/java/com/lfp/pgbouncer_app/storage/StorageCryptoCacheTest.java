@@ -0,0 +1,76 @@
+package com.lfp.pgbouncer_app.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.lfp.pgbouncer_app.storage.StorageCrypto.DecryptException;
+
+public class StorageCryptoCacheTest {
+
+	private static final String AES_SECRET = "0123456789abcdef";
+
+	private final AtomicInteger decryptCount = new AtomicInteger();
+	private final StorageCrypto storageCrypto = new StorageCrypto(AES_SECRET) {
+
+		@Override
+		public byte[] decrypt(byte[] encrypted) throws DecryptException {
+			decryptCount.incrementAndGet();
+			return super.decrypt(encrypted);
+		}
+	};
+	private final StorageCryptoCache cache = new StorageCryptoCache(storageCrypto, 16);
+
+	@Test
+	public void unchangedCiphertextIsDecryptedOnce() throws Exception {
+		var encrypted = storageCrypto.encrypt("value".getBytes(StandardCharsets.UTF_8));
+		assertArrayEquals("value".getBytes(StandardCharsets.UTF_8), decrypt("key", encrypted).get(0));
+		assertArrayEquals("value".getBytes(StandardCharsets.UTF_8), decrypt("key", encrypted).get(0));
+		assertEquals(1, decryptCount.get());
+	}
+
+	// same length, iv and tag, only the body differs
+	@Test
+	public void changedBodyIsNotServedFromCache() throws Exception {
+		var encrypted = storageCrypto.encrypt("value".getBytes(StandardCharsets.UTF_8));
+		decrypt("key", encrypted);
+		var tampered = encrypted.clone();
+		tampered[12] ^= 1;
+		var errors = new ArrayList<DecryptException>();
+		assertNull(cache.decryptAll(List.of("key"), Arrays.asList(tampered), (index, error) -> {
+			errors.add(error);
+			return null;
+		}).get(0));
+		assertEquals(1, errors.size());
+		assertEquals(2, decryptCount.get());
+	}
+
+	@Test
+	public void failureIsCachedWithItsMessage() throws Exception {
+		var encrypted = storageCrypto.encrypt("value".getBytes(StandardCharsets.UTF_8));
+		encrypted[encrypted.length - 1] ^= 1;
+		var errors = new ArrayList<DecryptException>();
+		for (int i = 0; i < 2; i++)
+			cache.decryptAll(List.of("key"), Arrays.asList(encrypted), (index, error) -> {
+				errors.add(error);
+				return null;
+			});
+		assertEquals(1, decryptCount.get());
+		assertEquals(2, errors.size());
+		assertEquals(errors.get(0).getMessage(), errors.get(1).getMessage());
+		assertArrayEquals(encrypted, errors.get(1).getCipher());
+	}
+
+	private List<byte[]> decrypt(String key, byte[] encrypted) {
+		return cache.decryptAll(List.of(key), Arrays.asList(encrypted), null);
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.lfp.pgbouncer_app.storage;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.lfp.joe.serial.Serials;
+import com.lfp.joe.utils.Utils;
+import com.lfp.joe.utils.time.TimeParser;
+
+import at.favre.lib.bytes.Bytes;
+
+/**
+ * compares the single pass decoder against the previous StorageReader path, which re-encoded and re-parsed the
+ * document once for each accessor. run with -prof gc to compare allocation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageRecordBenchmark {
+
+	@Param({ "256", "8192" })
+	private int valueLength;
+
+	private Bytes redisValue;
+
+	@Setup
+	public void setup() {
+		var value = Utils.Crypto.getSecureRandomString().repeat(valueLength);
+		var payload = Utils.Bits.from(value.substring(0, valueLength)).encodeBase64();
+		var json = String.format("{\"value\":\"%s\",\"modified\":\"%s\",\"size\":%s}", payload,
+				"2022-02-15T00:00:00.000000000Z", valueLength);
+		redisValue = Utils.Bits.from(json);
+	}
+
+	@Benchmark
+	public StorageRecord stream() {
+		return StorageRecord.decode(redisValue);
+	}
+
+	@Benchmark
+	public StorageRecord tree() {
+		var value = Serials.Gsons.tryGetAsString(parseTree(redisValue), "value").map(Utils.Bits::parseBase64)
+				.orElse(Utils.Bits.empty());
+		var modifiedStr = Serials.Gsons.tryGetAsString(parseTree(redisValue), "modified").orElse(null);
+		Optional<Date> modified = TimeParser.instance().tryParseDate(modifiedStr);
+		return new StorageRecord(value, modified);
+	}
+
+	@SuppressWarnings("deprecation")
+	private static JsonElement parseTree(Bytes redisValue) {
+		var json = redisValue.encodeUtf8();
+		if (Utils.Strings.isBlank(json))
+			return JsonNull.INSTANCE;
+		json = "{" + Utils.Strings.substringAfter(json, "{");
+		return Serials.Gsons.getJsonParser().parse(json);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(StorageRecordBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}